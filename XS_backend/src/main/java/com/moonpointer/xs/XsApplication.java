@@ -3,9 +3,11 @@ package com.moonpointer.xs;
 import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @MapperScan("com.moonpointer.xs.mapper")
+@EnableScheduling
 public class XsApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,229 @@
+package com.moonpointer.xs.component;
+
+import cn.hutool.core.util.IdUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moonpointer.xs.entity.SysChatMsg;
+import com.moonpointer.xs.entity.VO.ConversationVO;
+import com.moonpointer.xs.mapper.ChatMsgMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * 会话列表索引
+ * 每个用户一个 Redis hash (chat:conv:{userId})，每个会话三个字段：
+ * m:{对方ID} -> 最后一条消息摘要 (JSON)，i:{对方ID} -> 最后一条消息 ID，u:{对方ID} -> 未读数
+ * 发送时用脚本原子地更新双方的摘要 (只接受更新的消息 ID) 并给接收方未读数加一，已读时清零
+ * built 字段标记索引已建立；hash 不存在 (首次访问或已过期) 时从数据库重建
+ * 数据库落后于异步写入队列，重建期间也可能有新消息：索引未建立时增量先记到 chat:conv-pending:{userId}，
+ * 重建在 RENAME 的同一个脚本里重放；快照里已有的消息 ID 记在 chat:conv-snapshot:{userId}，重放和之后迟到的增量都不再重复计未读
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChatConversationIndex {
+
+    private static final String KEY_PREFIX = "chat:conv:";
+    private static final String PENDING_PREFIX = "chat:conv-pending:";
+    private static final String SNAPSHOT_PREFIX = "chat:conv-snapshot:";
+    private static final String BUILT = "built";
+    private static final int PREVIEW_CHARS = 50;
+    // 待重放增量与快照 ID 的保留时间，需覆盖异步入库的延迟；更早的消息认为已在数据库里
+    private static final long PENDING_SECONDS = 300;
+    private static final int MAX_PENDING = 1000;
+
+    // 应用一条增量：摘要只接受更新的消息 ID，快照里已计过的消息不再加未读
+    private static final String APPLY =
+            "local function apply(key, snapshot, peer, summary, id, delta) " +
+            "  local last = redis.call('HGET', key, 'i:' .. peer) " +
+            "  if not last or tonumber(last) < tonumber(id) then " +
+            "    redis.call('HSET', key, 'm:' .. peer, summary, 'i:' .. peer, id) " +
+            "  end " +
+            "  if delta ~= '0' and redis.call('SISMEMBER', snapshot, id) == 0 then " +
+            "    redis.call('HINCRBY', key, 'u:' .. peer, delta) " +
+            "  end " +
+            "end ";
+
+    // KEYS: 用户的 hash, 待重放列表, 快照 ID 集合；ARGV: 对方ID, 摘要, 消息ID, 未读数增量, 过期秒数, 待重放保留秒数, 待重放上限
+    private static final DefaultRedisScript<Long> UPDATE_SCRIPT = new DefaultRedisScript<>(
+            APPLY +
+            "if redis.call('HEXISTS', KEYS[1], 'built') == 0 then " +
+            "  redis.call('RPUSH', KEYS[2], cjson.encode({ARGV[1], ARGV[2], ARGV[3], ARGV[4]})) " +
+            "  redis.call('LTRIM', KEYS[2], -tonumber(ARGV[7]), -1) " +
+            "  redis.call('EXPIRE', KEYS[2], ARGV[6]) " +
+            "  return 0 " +
+            "end " +
+            "apply(KEYS[1], KEYS[3], ARGV[1], ARGV[2], ARGV[3], ARGV[4]) " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[5]) " +
+            "return 1",
+            Long.class);
+
+    // KEYS: 临时 hash, 用户的 hash, 待重放列表, 快照 ID 集合；ARGV: 过期秒数, 快照保留秒数, 重放的最小消息 ID, 快照 ID...
+    // 已被其他请求重建过则放弃本次结果
+    private static final DefaultRedisScript<Long> REBUILD_SCRIPT = new DefaultRedisScript<>(
+            APPLY +
+            "if redis.call('HEXISTS', KEYS[2], 'built') == 1 then redis.call('DEL', KEYS[1]) return 0 end " +
+            "redis.call('RENAME', KEYS[1], KEYS[2]) " +
+            "redis.call('DEL', KEYS[4]) " +
+            "for i = 4, #ARGV do redis.call('SADD', KEYS[4], ARGV[i]) end " +
+            "redis.call('EXPIRE', KEYS[4], ARGV[2]) " +
+            "local pending = redis.call('LRANGE', KEYS[3], 0, -1) " +
+            "redis.call('DEL', KEYS[3]) " +
+            "for _, entry in ipairs(pending) do " +
+            "  local e = cjson.decode(entry) " +
+            "  if tonumber(e[3]) >= tonumber(ARGV[3]) then apply(KEYS[2], KEYS[4], e[1], e[2], e[3], e[4]) end " +
+            "end " +
+            "redis.call('EXPIRE', KEYS[2], ARGV[1]) " +
+            "return #pending",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final ChatMsgMapper chatMsgMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    // 索引闲置多久后过期 (过期后下次访问重建)
+    @Value("${app.chat-conversation.ttl-days:7}")
+    private long ttlDays;
+
+    /**
+     * 发送路径调用：更新发送方与接收方两侧的会话摘要，接收方未读数加一
+     */
+    public void onMessage(SysChatMsg msg) {
+        try {
+            String summary = objectMapper.writeValueAsString(summaryOf(msg));
+            update(msg.getSenderId(), msg.getReceiverId(), summary, msg.getId(), 0);
+            if (!msg.getSenderId().equals(msg.getReceiverId())) {
+                update(msg.getReceiverId(), msg.getSenderId(), summary, msg.getId(), 1);
+            }
+        } catch (Exception e) {
+            // 增量更新丢了就不再可信，删掉等下次访问重建
+            log.warn("更新会话列表失败: {}", e.getMessage());
+            evict(msg.getSenderId());
+            evict(msg.getReceiverId());
+        }
+    }
+
+    /**
+     * 已读回执：userId 与 peerId 的会话未读数清零
+     */
+    public void onRead(Long userId, Long peerId) {
+        try {
+            redisTemplate.opsForHash().delete(KEY_PREFIX + userId, "u:" + peerId);
+        } catch (Exception e) {
+            log.warn("清除未读数失败: {}", e.getMessage());
+            evict(userId);
+        }
+    }
+
+    /**
+     * 用户的全部会话 (未填充对方资料)，按最后一条消息从新到旧
+     */
+    public List<ConversationVO> list(Long userId) {
+        String key = KEY_PREFIX + userId;
+        Map<Object, Object> entries = redisTemplate.opsForHash().entries(key);
+        if (!entries.containsKey(BUILT)) entries = rebuild(userId);
+
+        List<ConversationVO> result = new ArrayList<>();
+        for (Map.Entry<Object, Object> e : entries.entrySet()) {
+            String field = e.getKey().toString();
+            if (!field.startsWith("m:")) continue;
+            try {
+                ConversationVO vo = objectMapper.readValue(e.getValue().toString(), ConversationVO.class);
+                vo.setPeerId(Long.valueOf(field.substring(2)));
+                Object unread = entries.get("u:" + vo.getPeerId());
+                vo.setUnread(unread == null ? 0 : Math.max(0, Long.parseLong(unread.toString())));
+                result.add(vo);
+            } catch (JsonProcessingException ex) {
+                log.warn("会话摘要解析失败: {} {}", key, field);
+            }
+        }
+        result.sort(Comparator.comparing(ConversationVO::getLastMsgId).reversed());
+        return result;
+    }
+
+    /**
+     * 从数据库重建：每个会话的最后一条消息 + 各好友发来的未读数
+     * 先写临时 key，再由脚本 RENAME 并重放重建期间积压的增量，读到的要么是旧索引要么是完整的新索引
+     */
+    public Map<Object, Object> rebuild(Long userId) {
+        long minId = ChatMsgIdGenerator.minIdAt(System.currentTimeMillis() - PENDING_SECONDS * 1000);
+        // 三次查询在同一事务里 (可重复读，同一个一致性快照)，快照 ID 与未读数对得上
+        Snapshot snapshot = transactionTemplate.execute(status -> new Snapshot(
+                chatMsgMapper.selectLastMessages(userId),
+                chatMsgMapper.countUnreadBySender(userId),
+                chatMsgMapper.selectReceivedIdsSince(userId, minId)));
+
+        Map<String, String> fields = new HashMap<>();
+        fields.put(BUILT, "1");
+        for (SysChatMsg msg : snapshot.lastMessages()) {
+            Long peerId = msg.getSenderId().equals(userId) ? msg.getReceiverId() : msg.getSenderId();
+            try {
+                fields.put("m:" + peerId, objectMapper.writeValueAsString(summaryOf(msg)));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException(e);
+            }
+            fields.put("i:" + peerId, msg.getId().toString());
+        }
+        for (Map<String, Object> row : snapshot.unread()) {
+            fields.put("u:" + row.get("peerId"), row.get("unread").toString());
+        }
+
+        String key = KEY_PREFIX + userId;
+        String tmp = key + ":rebuild:" + IdUtil.fastSimpleUUID();
+        redisTemplate.opsForHash().putAll(tmp, fields);
+        List<String> args = new ArrayList<>(snapshot.recentIds().size() + 3);
+        args.add(Long.toString(Duration.ofDays(ttlDays).toSeconds()));
+        args.add(Long.toString(PENDING_SECONDS));
+        args.add(Long.toString(minId));
+        for (Long id : snapshot.recentIds()) args.add(id.toString());
+        Long replayed = redisTemplate.execute(REBUILD_SCRIPT,
+                List.of(tmp, key, PENDING_PREFIX + userId, SNAPSHOT_PREFIX + userId), args.toArray());
+        log.debug("会话列表已重建: 用户 {}，{} 个会话，积压增量 {} 条", userId, snapshot.lastMessages().size(), replayed);
+        return redisTemplate.opsForHash().entries(key);
+    }
+
+    private record Snapshot(List<SysChatMsg> lastMessages, List<Map<String, Object>> unread, List<Long> recentIds) {
+    }
+
+    private void update(Long userId, Long peerId, String summary, Long msgId, int unreadDelta) {
+        redisTemplate.execute(UPDATE_SCRIPT,
+                List.of(KEY_PREFIX + userId, PENDING_PREFIX + userId, SNAPSHOT_PREFIX + userId),
+                peerId.toString(), summary, msgId.toString(), Integer.toString(unreadDelta),
+                Long.toString(Duration.ofDays(ttlDays).toSeconds()),
+                Long.toString(PENDING_SECONDS), Integer.toString(MAX_PENDING));
+    }
+
+    private void evict(Long userId) {
+        try {
+            redisTemplate.delete(KEY_PREFIX + userId);
+        } catch (Exception e) {
+            log.debug("删除会话列表失败: {}", e.getMessage());
+        }
+    }
+
+    // 发送方、接收方两侧共用一份摘要，对方 ID 在读取时取自字段名
+    private static ConversationVO summaryOf(SysChatMsg msg) {
+        ConversationVO vo = new ConversationVO();
+        vo.setLastMsgId(msg.getId());
+        vo.setLastSenderId(msg.getSenderId());
+        vo.setLastMsgType(msg.getMsgType());
+        vo.setLastTime(msg.getCreateTime());
+        String content = msg.getContent();
+        if (Integer.valueOf(1).equals(msg.getMsgType())) {
+            content = "[图片]";
+        } else if (content != null && content.codePointCount(0, content.length()) > PREVIEW_CHARS) {
+            content = content.substring(0, content.offsetByCodePoints(0, PREVIEW_CHARS)) + "…";
+        }
+        vo.setLastContent(content);
+        return vo;
+    }
+}
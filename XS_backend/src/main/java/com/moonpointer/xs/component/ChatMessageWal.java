@@ -0,0 +1,250 @@
+package com.moonpointer.xs.component;
+
+import com.moonpointer.xs.entity.SysChatMsg;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 聊天消息预写日志
+ * 消息推送前先追加到本地段文件 (chat-N.wal)，多个发送线程共用一次 fsync (组提交)；
+ * 段文件写满后封存，封存段里的消息全部入库后删除；启动时把残留段里的消息重放入库 (按主键幂等)
+ * 每条记录：length(int) crc32(int) payload(length)，末尾写了一半的记录在恢复时丢弃
+ */
+@Slf4j
+public class ChatMessageWal implements Closeable {
+
+    private static final String PREFIX = "chat-";
+    private static final String SUFFIX = ".wal";
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final boolean fsync;
+
+    // 启动时发现的旧段，重放完成后删除
+    private final List<Path> recovered = new ArrayList<>();
+
+    private Segment current;
+    private long nextIndex;
+    // 已追加 / 已落盘的记录序号
+    private long appendedSeq;
+    private volatile long syncedSeq;
+    private final Object syncLock = new Object();
+
+    /**
+     * 一个段文件，outstanding 为尚未入库的消息数
+     */
+    public static final class Segment {
+        final Path path;
+        final FileChannel channel;
+        final AtomicInteger outstanding = new AtomicInteger();
+        volatile boolean sealed;
+
+        Segment(Path path) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+    }
+
+    public ChatMessageWal(Path dir, long segmentBytes, boolean fsync) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+        Files.createDirectories(dir);
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(p -> p.getFileName().toString().startsWith(PREFIX) && p.getFileName().toString().endsWith(SUFFIX))
+                    .sorted((a, b) -> Long.compare(indexOf(a), indexOf(b)))
+                    .forEach(recovered::add);
+        }
+        nextIndex = recovered.isEmpty() ? 0 : indexOf(recovered.get(recovered.size() - 1)) + 1;
+        current = new Segment(dir.resolve(PREFIX + nextIndex++ + SUFFIX));
+    }
+
+    /**
+     * 读出旧段中的全部完整记录
+     */
+    public List<SysChatMsg> recover() throws IOException {
+        List<SysChatMsg> messages = new ArrayList<>();
+        for (Path path : recovered) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                while (true) {
+                    int length;
+                    try {
+                        length = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    if (length < 0 || length > MAX_RECORD_BYTES) {
+                        log.warn("聊天预写日志记录损坏，丢弃 {} 之后的内容", path.getFileName());
+                        break;
+                    }
+                    int crc = in.readInt();
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    CRC32 checksum = new CRC32();
+                    checksum.update(payload);
+                    if ((int) checksum.getValue() != crc) {
+                        log.warn("聊天预写日志记录损坏，丢弃 {} 之后的内容", path.getFileName());
+                        break;
+                    }
+                    messages.add(decode(payload));
+                }
+            } catch (EOFException e) {
+                log.warn("聊天预写日志末尾记录不完整: {}", path.getFileName());
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * 旧段中的消息已全部重放入库
+     */
+    public void discardRecovered() throws IOException {
+        for (Path path : recovered) Files.deleteIfExists(path);
+        recovered.clear();
+    }
+
+    /**
+     * 追加一条消息，返回时已按配置落盘
+     * @return 所在的段，入库后调用 persisted
+     */
+    public Segment append(SysChatMsg msg) throws IOException {
+        byte[] payload = encode(msg);
+        CRC32 checksum = new CRC32();
+        checksum.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+        record.putInt(payload.length).putInt((int) checksum.getValue()).put(payload).flip();
+
+        Segment segment;
+        long seq;
+        synchronized (this) {
+            if (current.channel.position() >= segmentBytes) rotate();
+            segment = current;
+            while (record.hasRemaining()) segment.channel.write(record);
+            segment.outstanding.incrementAndGet();
+            seq = ++appendedSeq;
+        }
+        if (fsync) sync(seq);
+        return segment;
+    }
+
+    /**
+     * 一条消息已入库
+     */
+    public void persisted(Segment segment) {
+        if (segment.outstanding.decrementAndGet() == 0 && segment.sealed) {
+            delete(segment);
+        }
+    }
+
+    // 组提交：已经被别的线程 fsync 覆盖到的记录直接返回
+    private void sync(long seq) throws IOException {
+        if (syncedSeq >= seq) return;
+        synchronized (syncLock) {
+            if (syncedSeq >= seq) return;
+            long target;
+            FileChannel channel;
+            synchronized (this) {
+                target = appendedSeq;
+                channel = current.channel;
+            }
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // 段已封存，封存时已经落盘
+            }
+            syncedSeq = target;
+        }
+    }
+
+    // 调用方持有 this 锁
+    private void rotate() throws IOException {
+        Segment old = current;
+        current = new Segment(dir.resolve(PREFIX + nextIndex++ + SUFFIX));
+        old.channel.force(false);
+        old.channel.close();
+        old.sealed = true;
+        if (old.outstanding.get() == 0) delete(old);
+    }
+
+    private void delete(Segment segment) {
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            log.warn("删除聊天预写日志失败: {}", segment.path, e);
+        }
+    }
+
+    /**
+     * 关闭当前段，所有消息都已入库时一并删除
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        current.channel.force(false);
+        current.channel.close();
+        current.sealed = true;
+        if (current.outstanding.get() == 0) delete(current);
+    }
+
+    private static long indexOf(Path path) {
+        String name = path.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static byte[] encode(SysChatMsg msg) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(msg.getId());
+        out.writeLong(msg.getSenderId());
+        out.writeLong(msg.getReceiverId());
+        out.writeInt(msg.getMsgType() != null ? msg.getMsgType() : 0);
+        out.writeInt(msg.getIsRead() != null ? msg.getIsRead() : 0);
+        out.writeLong(msg.getCreateTime().atZone(ZONE).toInstant().toEpochMilli());
+        if (msg.getContent() == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] content = msg.getContent().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(content.length);
+            out.write(content);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static SysChatMsg decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        SysChatMsg msg = new SysChatMsg();
+        msg.setId(in.readLong());
+        msg.setSenderId(in.readLong());
+        msg.setReceiverId(in.readLong());
+        msg.setConversationId(SysChatMsg.conversationOf(msg.getSenderId(), msg.getReceiverId()));
+        msg.setMsgType(in.readInt());
+        msg.setIsRead(in.readInt());
+        msg.setCreateTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(in.readLong()), ZONE));
+        int length = in.readInt();
+        if (length >= 0) {
+            byte[] content = new byte[length];
+            in.readFully(content);
+            msg.setContent(new String(content, StandardCharsets.UTF_8));
+        }
+        return msg;
+    }
+}
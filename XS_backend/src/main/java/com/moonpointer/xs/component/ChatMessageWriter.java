@@ -0,0 +1,284 @@
+package com.moonpointer.xs.component;
+
+import com.moonpointer.xs.entity.SysChatMsg;
+import com.moonpointer.xs.mapper.ChatMsgMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 聊天消息异步入库
+ * 发送线程只生成 ID、追加预写日志、放入有界队列就返回，推送不再等 MySQL；
+ * 单个写线程攒够 batch-size 条或等满 flush-millis 后用一条多行 INSERT 写入
+ * 队列满时发送线程最多等待 offer-timeout-millis，仍放不进去就在当前线程同步写库 (背压)
+ * 写库失败时整批保留并退避重试，消息始终在预写日志里，进程崩溃后启动时重放
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChatMessageWriter {
+
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+
+    private final ChatMsgMapper chatMsgMapper;
+    private final ChatMsgIdGenerator idGenerator;
+
+    @Value("${app.chat-persist.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${app.chat-persist.batch-size:200}")
+    private int batchSize;
+
+    @Value("${app.chat-persist.flush-millis:50}")
+    private long flushMillis;
+
+    @Value("${app.chat-persist.offer-timeout-millis:100}")
+    private long offerTimeoutMillis;
+
+    @Value("${app.chat-persist.wal-dir:./chat-wal/}")
+    private String walDir;
+
+    // 每条消息都 fsync (组提交)，关闭后只保证进程崩溃不丢，掉电可能丢最后几条
+    @Value("${app.chat-persist.wal-fsync:true}")
+    private boolean walFsync;
+
+    @Value("${app.chat-persist.wal-segment-bytes:16777216}")
+    private long walSegmentBytes;
+
+    private record Pending(SysChatMsg msg, ChatMessageWal.Segment segment) {
+    }
+
+    private BlockingQueue<Pending> queue;
+    private ChatMessageWal wal;
+    private Thread writerThread;
+    private volatile boolean running;
+    // 已出队、尚未入库的各批 (写线程的批与发送线程的同步写各占一项)，已读回执需要同时修改
+    // 出队与登记在 readLock 下一步完成，消息任何时刻都在队列或这里，回执不会漏掉
+    private final Set<List<Pending>> inFlight = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Object readLock = new Object();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder persisted = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchMillis = new LongAdder();
+    private final LongAdder syncWrites = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    @PostConstruct
+    public void init() throws IOException {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        wal = new ChatMessageWal(Paths.get(walDir), walSegmentBytes, walFsync);
+
+        // 上次未入库的消息先补写，按主键幂等
+        List<SysChatMsg> recovered = wal.recover();
+        for (int from = 0; from < recovered.size(); from += batchSize) {
+            chatMsgMapper.insertBatch(recovered.subList(from, Math.min(from + batchSize, recovered.size())));
+        }
+        wal.discardRecovered();
+        if (!recovered.isEmpty()) log.info("聊天预写日志重放完成: {} 条", recovered.size());
+
+        running = true;
+        writerThread = new Thread(this::drainLoop, "chat-msg-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * 提交一条消息：补齐 ID / 会话键 / 时间 / 已读状态，落预写日志后入队
+     * 返回后消息即可推送 (已可在崩溃后恢复)
+     */
+    public void submit(SysChatMsg msg) {
+        if (msg.getId() == null) msg.setId(idGenerator.nextId());
+        msg.setConversationId(SysChatMsg.conversationOf(msg.getSenderId(), msg.getReceiverId()));
+        if (msg.getCreateTime() == null) msg.setCreateTime(LocalDateTime.now());
+        if (msg.getIsRead() == null) msg.setIsRead(0);
+        submitted.increment();
+
+        ChatMessageWal.Segment segment;
+        try {
+            segment = wal.append(msg);
+        } catch (IOException e) {
+            log.error("写聊天预写日志失败，改为同步入库", e);
+            writeNow(msg, null);
+            return;
+        }
+
+        boolean queued;
+        try {
+            queued = queue.offer(new Pending(msg, segment), offerTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (queued) {
+            LockSupport.unpark(writerThread);
+        } else {
+            writeNow(msg, segment);
+        }
+    }
+
+    /**
+     * 已读回执：尚未入库的 senderId -> receiverId 消息也标记为已读
+     * 在数据库 UPDATE 之前调用；正在写库的那一批入库后会按 ID 补一次更新
+     */
+    public void markRead(Long senderId, Long receiverId) {
+        synchronized (readLock) {
+            for (Pending p : queue) markRead(p.msg(), senderId, receiverId);
+            for (List<Pending> batch : inFlight) {
+                for (Pending p : batch) markRead(p.msg(), senderId, receiverId);
+            }
+        }
+    }
+
+    private static void markRead(SysChatMsg msg, Long senderId, Long receiverId) {
+        if (msg.getSenderId().equals(senderId) && msg.getReceiverId().equals(receiverId)) msg.setIsRead(1);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long batchCount = batches.sum();
+        stats.put("queued", queue.size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("submitted", submitted.sum());
+        stats.put("persisted", persisted.sum());
+        stats.put("batches", batchCount);
+        stats.put("avgBatchSize", batchCount == 0 ? 0 : (double) persisted.sum() / batchCount);
+        stats.put("avgBatchMillis", batchCount == 0 ? 0 : (double) batchMillis.sum() / batchCount);
+        stats.put("syncWrites", syncWrites.sum());
+        stats.put("failures", failures.sum());
+        return stats;
+    }
+
+    private void drainLoop() {
+        long flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+        while (running || !queue.isEmpty()) {
+            List<Pending> batch = new ArrayList<>(batchSize);
+            if (!drain(batch)) {
+                // 空闲时等待，submit 入队后会唤醒
+                LockSupport.parkNanos(this, flushNanos);
+                continue;
+            }
+            // 攒批：凑满 batchSize 或等到时间窗结束
+            long deadline = System.nanoTime() + flushNanos;
+            while (batch.size() < batchSize && running) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) break;
+                LockSupport.parkNanos(this, remaining);
+                drain(batch);
+            }
+            drain(batch);
+            writeWithRetry(batch);
+        }
+    }
+
+    // 在 readLock 下出队并登记为在途，返回批中是否有消息
+    private boolean drain(List<Pending> batch) {
+        synchronized (readLock) {
+            queue.drainTo(batch, batchSize - batch.size());
+            if (batch.isEmpty()) return false;
+            inFlight.add(batch);
+            return true;
+        }
+    }
+
+    // 失败时退避重试，关闭期间放弃 (消息仍在预写日志里，下次启动重放)
+    private void writeWithRetry(List<Pending> batch) {
+        long backoff = 200;
+        try {
+            while (true) {
+                try {
+                    long start = System.nanoTime();
+                    insert(batch);
+                    batches.increment();
+                    batchMillis.add((System.nanoTime() - start) / 1_000_000);
+                    return;
+                } catch (Exception e) {
+                    failures.increment();
+                    log.warn("聊天消息批量入库失败 ({} 条)，{} 毫秒后重试: {}", batch.size(), backoff, e.getMessage());
+                    if (!running) return;
+                    try {
+                        Thread.sleep(backoff);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+                }
+            }
+        } finally {
+            synchronized (readLock) {
+                inFlight.remove(batch);
+            }
+        }
+    }
+
+    private void insert(List<Pending> batch) {
+        List<SysChatMsg> msgs = new ArrayList<>(batch.size());
+        for (Pending p : batch) msgs.add(p.msg());
+        chatMsgMapper.insertBatch(msgs);
+        afterInsert(batch);
+    }
+
+    // 队列满或预写日志不可用时在发送线程上直接写
+    private void writeNow(SysChatMsg msg, ChatMessageWal.Segment segment) {
+        syncWrites.increment();
+        List<Pending> one = List.of(new Pending(msg, segment));
+        synchronized (readLock) {
+            inFlight.add(one);
+        }
+        try {
+            insert(one);
+        } finally {
+            synchronized (readLock) {
+                inFlight.remove(one);
+            }
+        }
+    }
+
+    private void afterInsert(List<Pending> batch) {
+        // 入库时还是未读、之后才收到回执的消息，按 ID 补一次
+        List<Long> read = new ArrayList<>();
+        synchronized (readLock) {
+            for (Pending p : batch) {
+                if (Integer.valueOf(1).equals(p.msg().getIsRead())) read.add(p.msg().getId());
+            }
+        }
+        if (!read.isEmpty()) chatMsgMapper.markReadByIds(read);
+
+        for (Pending p : batch) {
+            if (p.segment() != null) wal.persisted(p.segment());
+        }
+        persisted.add(batch.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            log.error("关闭时仍有 {} 条聊天消息未入库，下次启动从预写日志重放", queue.size());
+        }
+        try {
+            wal.close();
+        } catch (IOException e) {
+            log.warn("关闭聊天预写日志失败", e);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.moonpointer.xs.component;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 聊天消息 ID 生成器
+ * 消息在推送前就需要 ID (入库改为异步批量)，不能再依赖自增主键：
+ * 时间戳 (毫秒, 41 位) | 节点号 (4 位) | 序号 (8 位)，共 53 位，
+ * 不超过 JS 的安全整数范围，前端按数字处理不会丢精度；按时间递增，且大于原有的自增 ID
+ */
+@Component
+public class ChatMsgIdGenerator {
+
+    // 2024-01-01 00:00:00 UTC
+    private static final long EPOCH = 1704067200000L;
+    private static final int NODE_BITS = 4;
+    private static final int SEQUENCE_BITS = 8;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+
+    private final long node;
+    private long lastMillis = -1;
+    private long sequence;
+
+    public ChatMsgIdGenerator(@Value("${app.node-id:0}") int nodeId) {
+        if (nodeId < 0 || nodeId >= (1 << NODE_BITS)) {
+            throw new IllegalArgumentException("app.node-id 取值范围 0-" + ((1 << NODE_BITS) - 1));
+        }
+        this.node = nodeId;
+    }
+
+    /**
+     * epochMillis 之后生成的 ID 都不小于该值 (各节点时钟偏差不计)
+     */
+    public static long minIdAt(long epochMillis) {
+        return Math.max(0, epochMillis - EPOCH) << (NODE_BITS + SEQUENCE_BITS);
+    }
+
+    public synchronized long nextId() {
+        long now = System.currentTimeMillis() - EPOCH;
+        // 时钟回拨时沿用上一个时间戳继续递增
+        if (now <= lastMillis) {
+            now = lastMillis;
+            if (++sequence > MAX_SEQUENCE) {
+                // 本毫秒序号用完，借用下一毫秒
+                now = ++lastMillis;
+                sequence = 0;
+            }
+        } else {
+            sequence = 0;
+        }
+        lastMillis = now;
+        return (now << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS) | sequence;
+    }
+}
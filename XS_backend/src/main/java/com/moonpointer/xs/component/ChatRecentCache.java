@@ -0,0 +1,254 @@
+package com.moonpointer.xs.component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moonpointer.xs.entity.SysChatMsg;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 会话最近消息缓存
+ * 每个会话保留 ID 最大的 size 条消息：进程内 LRU 环 + Redis 有序集合 (chat:recent:{会话键}, score 为消息 ID)
+ * 只在发送路径上写入，缓存里始终是会话末尾连续的一段，翻过缓存窗口后再查数据库
+ * 已读状态不改写缓存里的消息，而是按接收方记录“已读到的消息 ID” (chat:recent-read:{会话键})，读取时合并
+ * 多实例部署时其他节点发送的消息只写进 Redis：命中进程内的环后先用 ZCOUNT 核对 Redis 中不早于环内最旧一条的条数，
+ * 对不上 (中间或末尾缺了其他节点的消息) 就重新加载，缓存里始终是连续的一段；
+ * 其他节点记录的已读位置最多 local-ttl-seconds 后随整体重新加载可见
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChatRecentCache {
+
+    private static final String MSGS_PREFIX = "chat:recent:";
+    private static final String READ_PREFIX = "chat:recent-read:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+
+    // 每个会话缓存的消息条数
+    @Value("${app.chat-recent.size:50}")
+    private int size;
+
+    // 进程内最多缓存的会话数
+    @Value("${app.chat-recent.max-conversations:10000}")
+    private int maxConversations;
+
+    @Value("${app.chat-recent.local-ttl-seconds:10}")
+    private long localTtlSeconds;
+
+    @Value("${app.chat-recent.redis-ttl-minutes:1440}")
+    private long redisTtlMinutes;
+
+    private final LinkedHashMap<String, Ring> rings = new LinkedHashMap<>(256, 0.75f, true);
+
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder staleRings = new LongAdder();
+    private final LongAdder redisLoads = new LongAdder();
+    private final LongAdder redisErrors = new LongAdder();
+
+    /**
+     * 一个会话的缓存窗口，按消息 ID 排序；readUpTo: 接收方 ID -> 已读到的消息 ID
+     */
+    private static final class Ring {
+        final TreeMap<Long, SysChatMsg> messages = new TreeMap<>();
+        final Map<Long, Long> readUpTo = new HashMap<>();
+        final long loadedAt = System.currentTimeMillis();
+        // 已从 Redis 加载完成
+        boolean loaded;
+    }
+
+    /**
+     * 发送路径调用 (消息已分配 ID)
+     */
+    public void append(SysChatMsg msg) {
+        String conversationId = msg.getConversationId();
+        synchronized (this) {
+            // 进程内没有这个会话时不新建，下次读取时从 Redis 整体加载
+            Ring ring = rings.get(conversationId);
+            if (ring != null) {
+                ring.messages.put(msg.getId(), copyOf(msg));
+                while (ring.messages.size() > size) ring.messages.pollFirstEntry();
+            }
+        }
+        String key = MSGS_PREFIX + conversationId;
+        try {
+            redisTemplate.opsForZSet().add(key, objectMapper.writeValueAsString(msg), msg.getId());
+            // 只保留 ID 最大的 size 条，删掉的总是最旧的，缓存仍是连续的一段
+            redisTemplate.opsForZSet().removeRange(key, 0, -size - 1);
+            redisTemplate.expire(key, Duration.ofMinutes(redisTtlMinutes));
+        } catch (Exception e) {
+            // 缓存里缺了一条就不再连续，整个会话作废
+            redisErrors.increment();
+            log.warn("写入最近消息缓存失败，清除会话 {}: {}", conversationId, e.getMessage());
+            invalidate(conversationId);
+        }
+    }
+
+    /**
+     * 已读回执：receiverId 收到的、ID 不超过 upToId 的消息都视为已读
+     */
+    public void markRead(String conversationId, Long receiverId, long upToId) {
+        synchronized (this) {
+            Ring ring = rings.get(conversationId);
+            if (ring != null) ring.readUpTo.merge(receiverId, upToId, Math::max);
+        }
+        String key = READ_PREFIX + conversationId;
+        try {
+            redisTemplate.opsForHash().put(key, receiverId.toString(), Long.toString(upToId));
+            redisTemplate.expire(key, Duration.ofMinutes(redisTtlMinutes));
+        } catch (Exception e) {
+            redisErrors.increment();
+            log.warn("写入已读位置失败，清除会话 {}: {}", conversationId, e.getMessage());
+            invalidate(conversationId);
+        }
+    }
+
+    /**
+     * 取缓存窗口内 ID 小于 beforeId 的消息，按 ID 倒序最多 limit 条 (已合并已读状态)
+     * 返回不足 limit 条时，更早的消息需要从数据库接着查
+     */
+    public List<SysChatMsg> recent(String conversationId, Long beforeId, int limit) {
+        Ring ring = ring(conversationId);
+        if (ring == null) return new ArrayList<>();
+        List<SysChatMsg> result = new ArrayList<>(Math.min(limit, size));
+        synchronized (this) {
+            NavigableMap<Long, SysChatMsg> window = beforeId == null
+                    ? ring.messages.descendingMap()
+                    : ring.messages.headMap(beforeId, false).descendingMap();
+            for (SysChatMsg msg : window.values()) {
+                if (result.size() >= limit) break;
+                SysChatMsg copy = copyOf(msg);
+                Long readUpTo = ring.readUpTo.get(msg.getReceiverId());
+                if (readUpTo != null && msg.getId() <= readUpTo) copy.setIsRead(1);
+                result.add(copy);
+            }
+        }
+        return result;
+    }
+
+    public void invalidate(String conversationId) {
+        synchronized (this) {
+            rings.remove(conversationId);
+        }
+        try {
+            redisTemplate.delete(List.of(MSGS_PREFIX + conversationId, READ_PREFIX + conversationId));
+        } catch (Exception e) {
+            log.debug("清除最近消息缓存失败: {}", e.getMessage());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (this) {
+            stats.put("conversations", rings.size());
+        }
+        stats.put("maxConversations", maxConversations);
+        stats.put("size", size);
+        stats.put("localHits", localHits.sum());
+        stats.put("staleRings", staleRings.sum());
+        stats.put("redisLoads", redisLoads.sum());
+        stats.put("redisErrors", redisErrors.sum());
+        return stats;
+    }
+
+    // 进程内命中、未过期且与 Redis 核对一致时直接用，否则从 Redis 加载；Redis 不可用时返回 null (全部走数据库)
+    // 加载前先把空环放进表里，加载期间发送的消息照样追加进来，不会因为并发而缺一条
+    private Ring ring(String conversationId) {
+        long expireBefore = System.currentTimeMillis() - localTtlSeconds * 1000;
+        Ring ring;
+        int count = -1;
+        long oldest = 0;
+        synchronized (this) {
+            ring = rings.get(conversationId);
+            if (ring != null && ring.loaded && ring.loadedAt >= expireBefore) {
+                count = ring.messages.size();
+                oldest = count == 0 ? 0 : ring.messages.firstKey();
+            }
+        }
+        if (count >= 0) {
+            if (matchesRedis(conversationId, oldest, count)) {
+                localHits.increment();
+                return ring;
+            }
+            staleRings.increment();
+        }
+
+        synchronized (this) {
+            Ring current = rings.get(conversationId);
+            // 另一个线程已换上新环 (可能正在加载) 时一起往里加载
+            if (current == null || current.loadedAt < expireBefore || (count >= 0 && current == ring)) {
+                current = new Ring();
+                rings.put(conversationId, current);
+                if (rings.size() > maxConversations) {
+                    Iterator<String> it = rings.keySet().iterator();
+                    it.next();
+                    it.remove();
+                }
+            }
+            ring = current;
+        }
+
+        List<SysChatMsg> loaded = new ArrayList<>();
+        Map<Object, Object> reads;
+        try {
+            Set<String> members = redisTemplate.opsForZSet().range(MSGS_PREFIX + conversationId, 0, -1);
+            if (members != null) {
+                for (String json : members) loaded.add(objectMapper.readValue(json, SysChatMsg.class));
+            }
+            reads = redisTemplate.opsForHash().entries(READ_PREFIX + conversationId);
+        } catch (Exception e) {
+            redisErrors.increment();
+            log.debug("读取最近消息缓存失败: {}", e.getMessage());
+            synchronized (this) {
+                if (!ring.loaded) rings.remove(conversationId, ring);
+            }
+            return null;
+        }
+        redisLoads.increment();
+
+        synchronized (this) {
+            for (SysChatMsg msg : loaded) ring.messages.putIfAbsent(msg.getId(), msg);
+            while (ring.messages.size() > size) ring.messages.pollFirstEntry();
+            for (Map.Entry<Object, Object> e : reads.entrySet()) {
+                ring.readUpTo.merge(Long.valueOf(e.getKey().toString()), Long.valueOf(e.getValue().toString()), Math::max);
+            }
+            ring.loaded = true;
+        }
+        return ring;
+    }
+
+    // Redis 中 ID 不小于本地最旧一条的消息数与本地一致，说明本地既没缺中间的也没缺末尾的
+    private boolean matchesRedis(String conversationId, long oldest, int count) {
+        String key = MSGS_PREFIX + conversationId;
+        try {
+            Long n = count == 0
+                    ? redisTemplate.opsForZSet().zCard(key)
+                    : redisTemplate.opsForZSet().count(key, oldest, Double.POSITIVE_INFINITY);
+            return n != null && n == count;
+        } catch (Exception e) {
+            redisErrors.increment();
+            log.debug("核对最近消息缓存失败: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private static SysChatMsg copyOf(SysChatMsg msg) {
+        SysChatMsg copy = new SysChatMsg();
+        copy.setId(msg.getId());
+        copy.setSenderId(msg.getSenderId());
+        copy.setReceiverId(msg.getReceiverId());
+        copy.setConversationId(msg.getConversationId());
+        copy.setContent(msg.getContent());
+        copy.setMsgType(msg.getMsgType());
+        copy.setCreateTime(msg.getCreateTime());
+        copy.setIsRead(msg.getIsRead());
+        return copy;
+    }
+}
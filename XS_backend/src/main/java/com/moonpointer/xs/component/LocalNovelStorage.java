@@ -0,0 +1,239 @@
+package com.moonpointer.xs.component;
+
+import cn.hutool.core.util.IdUtil;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * 本地磁盘上的小说存储，可配置多个目录 (通常各自挂一块盘)
+ * 文件按名字做最高随机权重哈希 (rendezvous hashing) 分散到各目录：
+ * 增删目录时只有一部分文件的首选目录会变，读取时按优先顺序逐个目录查找，旧位置上的文件仍然可读
+ * 索引文件 (xxx.txt.chapters 等) 跟随正文放在同一目录；首选目录可用空间不足时顺延到下一个
+ * 已知提交名字的草稿直接建在目标目录，提交只是目录内改名；名字未知 (如按内容摘要命名的正文) 时建在第一个目录
+ * 只配一个目录时与原来的单目录布局完全相同
+ */
+@Slf4j
+@Component
+public class LocalNovelStorage implements NovelStorage {
+
+    private static final String DRAFT_PREFIX = ".draft-";
+
+    // 存储目录，逗号分隔，默认只用 app.novel-path
+    @Value("${app.novel-storage.dirs:${app.novel-path}}")
+    private String[] dirNames;
+
+    // 目录可用空间低于此值时不再写入新文件 (除非所有目录都不足)
+    @Value("${app.novel-storage.min-free-bytes:1073741824}")
+    private long minFreeBytes;
+
+    private List<Path> dirs;
+
+    @PostConstruct
+    public void init() throws IOException {
+        List<Path> list = new ArrayList<>();
+        for (String name : dirNames) {
+            if (name == null || name.isBlank()) continue;
+            Path dir = Paths.get(name.strip()).toAbsolutePath().normalize();
+            if (list.contains(dir)) continue;
+            Files.createDirectories(dir);
+            list.add(dir);
+        }
+        if (list.isEmpty()) throw new IllegalStateException("未配置小说存储目录");
+        dirs = List.copyOf(list);
+        log.info("小说存储目录: {}", dirs);
+    }
+
+    @Override
+    public FileChannel openRead(String name) throws IOException {
+        Path path = locate(name);
+        if (path == null) throw new NoSuchFileException(name);
+        return FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    @Override
+    public Draft create() throws IOException {
+        return create(null);
+    }
+
+    @Override
+    public Draft create(String name) throws IOException {
+        Path dir = name == null ? dirs.get(0) : placement(name, 0);
+        return new LocalDraft(dir.resolve(DRAFT_PREFIX + IdUtil.fastSimpleUUID() + ".tmp"));
+    }
+
+    @Override
+    public boolean exists(String name) {
+        return locate(name) != null;
+    }
+
+    @Override
+    public long size(String name) throws IOException {
+        return Files.size(require(name));
+    }
+
+    @Override
+    public long lastModified(String name) throws IOException {
+        return Files.getLastModifiedTime(require(name)).toMillis();
+    }
+
+    @Override
+    public boolean delete(String name) throws IOException {
+        // 目录调整过的话同一个名字可能在多个目录里都有
+        boolean deleted = false;
+        for (Path dir : dirs) {
+            deleted |= Files.deleteIfExists(dir.resolve(name));
+        }
+        return deleted;
+    }
+
+    @Override
+    public List<String> list(String suffix) throws IOException {
+        Set<String> names = new TreeSet<>();
+        for (Path dir : dirs) {
+            try (Stream<Path> files = Files.list(dir)) {
+                files.map(p -> p.getFileName().toString())
+                        .filter(n -> n.endsWith(suffix) && !n.startsWith("."))
+                        .forEach(names::add);
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    @Override
+    public Path localPath(String name) {
+        return locate(name);
+    }
+
+    @Override
+    public List<Volume> volumes() {
+        List<Volume> volumes = new ArrayList<>(dirs.size());
+        for (Path dir : dirs) {
+            File file = dir.toFile();
+            volumes.add(new Volume(dir.toString(), file.getTotalSpace(), file.getUsableSpace()));
+        }
+        return volumes;
+    }
+
+    private Path require(String name) throws NoSuchFileException {
+        Path path = locate(name);
+        if (path == null) throw new NoSuchFileException(name);
+        return path;
+    }
+
+    // 按优先顺序查找文件所在目录，不存在返回 null
+    private Path locate(String name) {
+        for (Path dir : candidates(name)) {
+            Path path = dir.resolve(name);
+            if (Files.exists(path)) return path;
+        }
+        return null;
+    }
+
+    /**
+     * 新文件写入哪个目录：同名文件或所属正文已存在时放在同一目录，
+     * 否则取第一个可用空间足够的候选目录
+     */
+    private Path placement(String name, long size) {
+        Path existing = locate(name);
+        if (existing != null) return existing.getParent();
+        String owner = owner(name);
+        if (!owner.equals(name)) {
+            Path ownerPath = locate(owner);
+            if (ownerPath != null) return ownerPath.getParent();
+        }
+        List<Path> candidates = candidates(name);
+        for (Path dir : candidates) {
+            if (dir.toFile().getUsableSpace() - size >= minFreeBytes) return dir;
+        }
+        log.warn("所有小说存储目录可用空间不足 {} 字节: {}", minFreeBytes, name);
+        return candidates.get(0);
+    }
+
+    // 目录的优先顺序：按 hash(所属正文, 目录) 从大到小
+    private List<Path> candidates(String name) {
+        if (dirs.size() == 1) return dirs;
+        String owner = owner(name);
+        List<Path> sorted = new ArrayList<>(dirs);
+        sorted.sort(Comparator.comparingLong((Path dir) -> weight(owner, dir)).reversed());
+        return sorted;
+    }
+
+    // 索引文件所属的正文：xxx.txt.chapters -> xxx.txt，本身是正文时返回自己
+    private static String owner(String name) {
+        int first = name.indexOf('.');
+        if (first < 0) return name;
+        int second = name.indexOf('.', first + 1);
+        return second < 0 ? name : name.substring(0, second);
+    }
+
+    private static long weight(String owner, Path dir) {
+        // splitmix64 混合，保证重启后顺序稳定
+        long h = owner.hashCode() * 0x9E3779B97F4A7C15L + dir.toString().hashCode();
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    private final class LocalDraft implements Draft {
+        private Path tmp;
+        private final FileChannel channel;
+
+        LocalDraft(Path tmp) throws IOException {
+            this.tmp = tmp;
+            this.channel = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        @Override
+        public FileChannel channel() {
+            return channel;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return Files.size(tmp);
+        }
+
+        @Override
+        public boolean commit(String name, boolean replace) throws IOException {
+            if (tmp == null) throw new IllegalStateException("草稿已提交或已丢弃");
+            if (channel.isOpen()) {
+                channel.force(true);
+                channel.close();
+            }
+            if (!replace && exists(name)) {
+                close();
+                return false;
+            }
+            // 以 . 开头的临时文件 (导入暂存等) 放在哪个目录都能找到，留在草稿所在目录
+            Path dir = name.startsWith(".") ? tmp.getParent() : placement(name, size());
+            if (!dir.equals(tmp.getParent())) {
+                // 跨目录 (可能跨盘) 先整体搬到目标目录的临时名，再在目录内原子改名
+                Path moved = dir.resolve(tmp.getFileName());
+                Files.move(tmp, moved);
+                tmp = moved;
+            }
+            Files.move(tmp, dir.resolve(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel.isOpen()) channel.close();
+            if (tmp != null) {
+                Files.deleteIfExists(tmp);
+                tmp = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.moonpointer.xs.component;
+
+import com.moonpointer.xs.entity.SysNovelBookmark;
+import com.moonpointer.xs.mapper.NovelBookmarkMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 书签写缓冲
+ * 翻页时只更新内存中 (userId, novelId) 的最新位置，定时合并成一条批量 INSERT ... ON DUPLICATE KEY UPDATE 写库，
+ * 读取时先查缓冲；关闭时把剩余的书签全部写入
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NovelBookmarkBuffer {
+
+    // 单条 SQL 最多写入的书签数
+    private static final int BATCH_SIZE = 500;
+
+    private final NovelBookmarkMapper bookmarkMapper;
+
+    private final Map<Key, SysNovelBookmark> pending = new ConcurrentHashMap<>();
+
+    private record Key(long userId, long novelId) {
+    }
+
+    public void put(Long userId, Long novelId, Long byteOffset) {
+        SysNovelBookmark bookmark = new SysNovelBookmark();
+        bookmark.setUserId(userId);
+        bookmark.setNovelId(novelId);
+        bookmark.setByteOffset(byteOffset);
+        bookmark.setUpdateTime(LocalDateTime.now());
+        // 同一本书只保留最新的位置
+        pending.put(new Key(userId, novelId), bookmark);
+    }
+
+    /**
+     * 尚未写库的位置，没有时返回 null
+     */
+    public Long get(Long userId, Long novelId) {
+        SysNovelBookmark bookmark = pending.get(new Key(userId, novelId));
+        return bookmark != null ? bookmark.getByteOffset() : null;
+    }
+
+    @Scheduled(fixedDelayString = "${app.novel-bookmark.flush-millis:2000}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) return;
+
+        List<Map.Entry<Key, SysNovelBookmark>> entries = new ArrayList<>(pending.entrySet());
+        for (int from = 0; from < entries.size(); from += BATCH_SIZE) {
+            List<Map.Entry<Key, SysNovelBookmark>> batch = entries.subList(from, Math.min(from + BATCH_SIZE, entries.size()));
+            List<SysNovelBookmark> bookmarks = new ArrayList<>(batch.size());
+            for (Map.Entry<Key, SysNovelBookmark> entry : batch) bookmarks.add(entry.getValue());
+            try {
+                bookmarkMapper.upsertBatch(bookmarks);
+            } catch (Exception e) {
+                // 保留在缓冲中，下次重试
+                log.warn("书签批量写入失败，{} 条待重试: {}", pending.size(), e.getMessage());
+                return;
+            }
+            // 写库期间又有新位置的书签留到下一轮
+            for (Map.Entry<Key, SysNovelBookmark> entry : batch) {
+                pending.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void drain() {
+        flush();
+        if (!pending.isEmpty()) {
+            log.error("关闭时仍有 {} 条书签未写入", pending.size());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.moonpointer.xs.component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moonpointer.xs.common.Result;
+import com.moonpointer.xs.entity.SysNovel;
+import com.moonpointer.xs.mapper.NovelMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 小说目录快照
+ * 首页列表只在上传/修改小说后重建一次：快照里保存查询结果和序列化好的 JSON 字节，
+ * 热路径既不查库也不走 Jackson；ETag 取 JSON 内容摘要，重启后不变
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NovelCatalog {
+
+    private final NovelMapper novelMapper;
+    private final ObjectMapper objectMapper;
+
+    // 每次数据变更加一，快照版本落后时重建
+    private final AtomicLong version = new AtomicLong();
+    private volatile Snapshot snapshot;
+
+    /**
+     * 某个版本的目录：未删除的小说 (按上传时间倒序)、Result 包装后的 JSON、ETag
+     */
+    public record Snapshot(long version, List<SysNovel> novels, byte[] json, String etag) {
+    }
+
+    public Snapshot current() {
+        Snapshot current = snapshot;
+        if (current != null && current.version() == version.get()) return current;
+
+        synchronized (this) {
+            current = snapshot;
+            long target = version.get();
+            if (current != null && current.version() == target) return current;
+
+            List<SysNovel> novels = List.copyOf(novelMapper.selectActiveNovels());
+            byte[] json;
+            try {
+                json = objectMapper.writeValueAsBytes(Result.success(novels));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("小说目录序列化失败", e);
+            }
+            current = new Snapshot(target, novels, json, etag(json));
+            snapshot = current;
+            log.debug("小说目录快照已重建: 版本 {} 共 {} 本", target, novels.size());
+            return current;
+        }
+    }
+
+    /**
+     * 小说新增或修改后调用
+     * 在事务中调用时等提交后再使旧快照失效，避免提交前重建读到旧数据
+     */
+    public void invalidate() {
+        version.incrementAndGet();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    version.incrementAndGet();
+                }
+            });
+        }
+    }
+
+    private static String etag(byte[] json) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json);
+            return "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
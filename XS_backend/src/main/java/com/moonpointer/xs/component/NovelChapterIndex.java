@@ -0,0 +1,198 @@
+package com.moonpointer.xs.component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * 小说章节索引
+ * 上传时流式扫描一遍文件识别章节标题，在文件旁写入 .chapters 偏移索引，
+ * 读取时常驻内存，按章节号 O(1) 定位字节偏移
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NovelChapterIndex {
+
+    public static final String SUFFIX = ".chapters";
+
+    private static final int MAGIC = 0x58534349; // "XSCI"
+    private static final int VERSION = 1;
+    // 超过这个长度的行不可能是标题，直接跳过
+    private static final int MAX_HEADING_BYTES = 200;
+    private static final int MAX_TITLE_CHARS = 60;
+
+    private static final Pattern DEFAULT_PATTERN = Pattern.compile(
+            "^(第[0-9０-９零〇一二两三四五六七八九十百千万]+[章节回卷集部篇]|chapter\\s*[0-9ivxlc]+\\b|序章|楔子|尾声|番外).*",
+            Pattern.CASE_INSENSITIVE);
+
+    private final NovelFileRegistry fileRegistry;
+    private final NovelStorage storage;
+
+    // 额外的章节标题正则，可用 | 组合多个
+    @Value("${app.novel-chapter.pattern:}")
+    private String extraPattern;
+
+    private volatile Pattern customPattern;
+
+    // fileName -> 已加载的索引
+    private final ConcurrentHashMap<String, Chapters> cache = new ConcurrentHashMap<>();
+
+    /**
+     * 已加载的章节索引，offsets 升序
+     */
+    public record Chapters(long[] offsets, String[] titles) {
+        public int size() {
+            return offsets.length;
+        }
+
+        // 第 index 章的结束位置 (下一章起点)，最后一章返回 fileLength
+        public long end(int index, long fileLength) {
+            return index + 1 < offsets.length ? offsets[index + 1] : fileLength;
+        }
+
+        // offset 所在的章节号
+        public int chapterAt(long offset) {
+            int i = Arrays.binarySearch(offsets, offset);
+            return i >= 0 ? i : Math.max(0, -i - 2);
+        }
+    }
+
+    /**
+     * 获取章节索引，旧文件没有索引时现场构建一次
+     */
+    public Chapters get(String fileName) throws IOException {
+        Chapters chapters = cache.get(fileName);
+        if (chapters != null) return chapters;
+
+        String sidecar = sidecarName(fileName);
+        chapters = storage.exists(sidecar) ? load(sidecar) : build(fileName);
+        cache.put(fileName, chapters);
+        return chapters;
+    }
+
+    /**
+     * 流式扫描文件并写入索引文件
+     */
+    public Chapters build(String fileName) throws IOException {
+        Chapters chapters = scan(fileName);
+        write(sidecarName(fileName), chapters);
+        cache.put(fileName, chapters);
+        log.info("章节索引已生成: {} 共 {} 章", fileName, chapters.size());
+        return chapters;
+    }
+
+    public void invalidate(String fileName) {
+        cache.remove(fileName);
+    }
+
+    public String sidecarName(String fileName) {
+        return fileName + SUFFIX;
+    }
+
+    private Chapters scan(String fileName) throws IOException {
+        List<Long> offsets = new ArrayList<>();
+        List<String> titles = new ArrayList<>();
+        Pattern custom = customPattern();
+
+        byte[] chunk = new byte[64 * 1024];
+        byte[] line = new byte[MAX_HEADING_BYTES];
+        int lineLen = 0;
+        boolean overflow = false;
+        long lineStart = 0;
+        long pos = 0;
+
+        // 通过句柄注册表读取，压缩存储的文件同样按原文偏移扫描
+        try (InputStream in = fileRegistry.openStream(fileName)) {
+            int n;
+            while ((n = in.read(chunk)) != -1) {
+                for (int i = 0; i < n; i++, pos++) {
+                    byte b = chunk[i];
+                    if (b == '\n') {
+                        if (!overflow) matchLine(line, lineLen, lineStart, custom, offsets, titles);
+                        lineLen = 0;
+                        overflow = false;
+                        lineStart = pos + 1;
+                    } else if (!overflow) {
+                        if (lineLen < line.length) line[lineLen++] = b;
+                        else overflow = true;
+                    }
+                }
+            }
+        }
+        if (!overflow) matchLine(line, lineLen, lineStart, custom, offsets, titles);
+
+        // 第一章之前还有正文 (或者整本书没有识别出章节)
+        if (offsets.isEmpty() || offsets.get(0) > 0) {
+            offsets.add(0, 0L);
+            titles.add(0, offsets.size() == 1 ? "正文" : "前言");
+        }
+
+        long[] offsetArr = new long[offsets.size()];
+        for (int i = 0; i < offsetArr.length; i++) offsetArr[i] = offsets.get(i);
+        return new Chapters(offsetArr, titles.toArray(new String[0]));
+    }
+
+    private void matchLine(byte[] line, int len, long lineStart, Pattern custom, List<Long> offsets, List<String> titles) {
+        if (len == 0) return;
+        String text = new String(line, 0, len, StandardCharsets.UTF_8)
+                .replace("\uFEFF", "")
+                .replace('\u3000', ' ')
+                .strip();
+        if (text.isEmpty()) return;
+        if (DEFAULT_PATTERN.matcher(text).matches() || (custom != null && custom.matcher(text).find())) {
+            offsets.add(lineStart);
+            titles.add(text.length() > MAX_TITLE_CHARS ? text.substring(0, MAX_TITLE_CHARS) : text);
+        }
+    }
+
+    private Pattern customPattern() {
+        if (customPattern == null && StringUtils.hasText(extraPattern)) {
+            customPattern = Pattern.compile(extraPattern);
+        }
+        return customPattern;
+    }
+
+    /**
+     * 索引文件格式：
+     * magic(int) version(int) count(int) offsets(long[count]) titles(count 个 UTF 字符串)
+     * 偏移表定长，第 i 章的偏移位于 12 + 8 * i
+     */
+    private void write(String sidecar, Chapters chapters) throws IOException {
+        try (NovelStorage.Draft draft = storage.create(sidecar)) {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(draft.out()))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(chapters.size());
+                for (long offset : chapters.offsets()) out.writeLong(offset);
+                for (String title : chapters.titles()) out.writeUTF(title);
+            }
+            draft.commit(sidecar, true);
+        }
+    }
+
+    private Chapters load(String sidecar) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(storage.openRead(sidecar))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("章节索引格式错误: " + sidecar);
+            }
+            int count = in.readInt();
+            long[] offsets = new long[count];
+            String[] titles = new String[count];
+            for (int i = 0; i < count; i++) offsets[i] = in.readLong();
+            for (int i = 0; i < count; i++) titles[i] = in.readUTF();
+            return new Chapters(offsets, titles);
+        }
+    }
+}
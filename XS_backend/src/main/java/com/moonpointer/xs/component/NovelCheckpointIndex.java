@@ -0,0 +1,312 @@
+package com.moonpointer.xs.component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 小说字符/行号检查点
+ * 每隔约 interval 字节 (落在 UTF-8 字符边界上) 记录一个检查点：字节偏移、之前的字符数、之前的换行数，
+ * 写入文件旁的 .checkpoints；按百分比/行号跳转和按字符计算进度时，
+ * 二分找到最近的检查点后只需扫描不超过 interval 字节
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NovelCheckpointIndex {
+
+    public static final String SUFFIX = ".checkpoints";
+
+    private static final int MAGIC = 0x58534350; // "XSCP"
+    private static final int VERSION = 1;
+    // 百分比跳转时向前找行首的最大距离，超过则停在字符边界上
+    private static final int MAX_LINE_BACKTRACK = 4096;
+
+    private final NovelFileRegistry fileRegistry;
+    private final NovelStorage storage;
+    private final NovelPinnedCache pinnedCache;
+
+    @Value("${app.novel-checkpoint.interval:16384}")
+    private int interval;
+
+    // fileName -> 已加载的检查点表
+    private final ConcurrentHashMap<String, Checkpoints> cache = new ConcurrentHashMap<>();
+
+    /**
+     * 检查点表：第 i 个检查点位于 bytes[i]，其前共有 chars[i] 个字符、lines[i] 个换行
+     * 字符按 Unicode 码点计
+     */
+    public record Checkpoints(long[] bytes, long[] chars, long[] lines,
+                              long totalBytes, long totalChars, long totalLines) {
+        public int size() {
+            return bytes.length;
+        }
+
+        // 第 i 段的结束字节 (下一个检查点或文件末尾)
+        long end(int i) {
+            return i + 1 < bytes.length ? bytes[i + 1] : totalBytes;
+        }
+
+        // 不超过 key 的最后一个检查点
+        static int floor(long[] values, long key) {
+            int i = Arrays.binarySearch(values, key);
+            if (i < 0) return Math.max(0, -i - 2);
+            // 空段会产生相同的值，取最后一个
+            while (i + 1 < values.length && values[i + 1] == key) i++;
+            return i;
+        }
+    }
+
+    /**
+     * 获取检查点表，旧文件没有索引时现场构建一次
+     */
+    public Checkpoints get(String fileName) throws IOException {
+        Checkpoints checkpoints = cache.get(fileName);
+        if (checkpoints != null) return checkpoints;
+
+        String sidecar = sidecarName(fileName);
+        checkpoints = storage.exists(sidecar) ? load(sidecar) : build(fileName);
+        cache.put(fileName, checkpoints);
+        return checkpoints;
+    }
+
+    /**
+     * 流式扫描文件并写入检查点文件
+     */
+    public Checkpoints build(String fileName) throws IOException {
+        Checkpoints checkpoints = scan(fileName);
+        write(sidecarName(fileName), checkpoints);
+        cache.put(fileName, checkpoints);
+        log.info("字符检查点已生成: {} 共 {} 个, {} 字符, {} 行",
+                fileName, checkpoints.size(), checkpoints.totalChars(), checkpoints.totalLines() + 1);
+        return checkpoints;
+    }
+
+    public void invalidate(String fileName) {
+        cache.remove(fileName);
+    }
+
+    public String sidecarName(String fileName) {
+        return fileName + SUFFIX;
+    }
+
+    /**
+     * byteOffset 之前的字符数
+     * 每页只在加载时调用一次 (结果随页缓存)；常驻内存的小说直接在内存里数，不读文件
+     */
+    public long charsBefore(String fileName, long byteOffset) throws IOException {
+        Checkpoints cp = get(fileName);
+        if (byteOffset >= cp.totalBytes()) return cp.totalChars();
+        if (byteOffset <= 0) return 0;
+
+        int i = Checkpoints.floor(cp.bytes(), byteOffset);
+        long chars = cp.chars()[i];
+        int length = (int) (byteOffset - cp.bytes()[i]);
+        if (length == 0) return chars;
+
+        ByteBuffer content = pinnedCache.content(fileName);
+        if (content != null && byteOffset <= content.capacity()) {
+            for (int k = (int) cp.bytes()[i]; k < byteOffset; k++) {
+                if ((content.get(k) & 0xC0) != 0x80) chars++;
+            }
+            return chars;
+        }
+
+        ByteBuffer buffer = fileRegistry.borrowBuffer(length);
+        try {
+            int n = readFully(fileName, cp.bytes()[i], buffer, length);
+            byte[] bytes = buffer.array();
+            for (int k = 0; k < n; k++) {
+                if ((bytes[k] & 0xC0) != 0x80) chars++;
+            }
+            return chars;
+        } finally {
+            fileRegistry.returnBuffer(buffer);
+        }
+    }
+
+    /**
+     * 第 charIndex 个字符所在行的行首字节偏移，用于按百分比跳转
+     * 行太长 (行首超过 MAX_LINE_BACKTRACK 字节) 时返回该字符本身的偏移
+     */
+    public long seekChar(String fileName, long charIndex) throws IOException {
+        Checkpoints cp = get(fileName);
+        if (charIndex <= 0) return 0;
+        if (charIndex >= cp.totalChars()) return cp.totalBytes();
+
+        int i = Checkpoints.floor(cp.chars(), charIndex);
+        long segmentStart = cp.bytes()[i];
+        int length = (int) (cp.end(i) - segmentStart);
+        long remaining = charIndex - cp.chars()[i];
+
+        ByteBuffer buffer = fileRegistry.borrowBuffer(length);
+        try {
+            int n = readFully(fileName, segmentStart, buffer, length);
+            byte[] bytes = buffer.array();
+            long target = segmentStart + n;
+            for (int k = 0; k < n; k++) {
+                if ((bytes[k] & 0xC0) != 0x80 && remaining-- == 0) {
+                    target = segmentStart + k;
+                    break;
+                }
+            }
+            return lineStart(fileName, target);
+        } finally {
+            fileRegistry.returnBuffer(buffer);
+        }
+    }
+
+    /**
+     * 第 line 行 (从 0 开始) 的行首字节偏移，超出范围返回 -1
+     */
+    public long seekLine(String fileName, long line) throws IOException {
+        Checkpoints cp = get(fileName);
+        if (line < 0 || line > cp.totalLines()) return -1;
+        if (line == 0) return 0;
+
+        // 目标换行符位于“之前换行数 < line”的最后一个检查点之后
+        int i = Checkpoints.floor(cp.lines(), line - 1);
+        long segmentStart = cp.bytes()[i];
+        int length = (int) (cp.end(i) - segmentStart);
+        long remaining = line - cp.lines()[i];
+
+        ByteBuffer buffer = fileRegistry.borrowBuffer(length);
+        try {
+            int n = readFully(fileName, segmentStart, buffer, length);
+            byte[] bytes = buffer.array();
+            for (int k = 0; k < n; k++) {
+                if (bytes[k] == '\n' && --remaining == 0) return segmentStart + k + 1;
+            }
+            return -1;
+        } finally {
+            fileRegistry.returnBuffer(buffer);
+        }
+    }
+
+    // 向前找 byteOffset 所在行的行首
+    private long lineStart(String fileName, long byteOffset) throws IOException {
+        int length = (int) Math.min(byteOffset, MAX_LINE_BACKTRACK);
+        if (length == 0) return byteOffset;
+
+        ByteBuffer buffer = fileRegistry.borrowBuffer(length);
+        try {
+            long from = byteOffset - length;
+            int n = readFully(fileName, from, buffer, length);
+            byte[] bytes = buffer.array();
+            for (int k = n - 1; k >= 0; k--) {
+                if (bytes[k] == '\n') return from + k + 1;
+            }
+            return from == 0 ? 0 : byteOffset;
+        } finally {
+            fileRegistry.returnBuffer(buffer);
+        }
+    }
+
+    // 读取 [position, position + length)，返回实际读到的字节数
+    private int readFully(String fileName, long position, ByteBuffer buffer, int length) throws IOException {
+        buffer.clear().limit(length);
+        return Math.max(0, fileRegistry.read(fileName, position, buffer));
+    }
+
+    private Checkpoints scan(String fileName) throws IOException {
+        LongList bytes = new LongList();
+        LongList chars = new LongList();
+        LongList lines = new LongList();
+        long charCount = 0;
+        long lineCount = 0;
+        long nextCheckpoint = 0;
+        long pos = 0;
+
+        byte[] chunk = new byte[64 * 1024];
+        try (InputStream in = fileRegistry.openStream(fileName)) {
+            int n;
+            while ((n = in.read(chunk)) != -1) {
+                for (int i = 0; i < n; i++, pos++) {
+                    byte b = chunk[i];
+                    // 续字节不计字符，检查点也只落在字符首字节上
+                    if ((b & 0xC0) == 0x80) continue;
+                    if (pos >= nextCheckpoint) {
+                        bytes.add(pos);
+                        chars.add(charCount);
+                        lines.add(lineCount);
+                        nextCheckpoint = pos + interval;
+                    }
+                    charCount++;
+                    if (b == '\n') lineCount++;
+                }
+            }
+        }
+        if (bytes.size == 0) {
+            bytes.add(0);
+            chars.add(0);
+            lines.add(0);
+        }
+        return new Checkpoints(bytes.toArray(), chars.toArray(), lines.toArray(), pos, charCount, lineCount);
+    }
+
+    /**
+     * 检查点文件格式：
+     * magic(int) version(int) count(int) totalBytes(long) totalChars(long) totalLines(long)
+     * 之后 count 组 (byte(long) chars(long) lines(long))
+     */
+    private void write(String sidecar, Checkpoints cp) throws IOException {
+        try (NovelStorage.Draft draft = storage.create(sidecar)) {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(draft.out()))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(cp.size());
+                out.writeLong(cp.totalBytes());
+                out.writeLong(cp.totalChars());
+                out.writeLong(cp.totalLines());
+                for (int i = 0; i < cp.size(); i++) {
+                    out.writeLong(cp.bytes()[i]);
+                    out.writeLong(cp.chars()[i]);
+                    out.writeLong(cp.lines()[i]);
+                }
+            }
+            draft.commit(sidecar, true);
+        }
+    }
+
+    private Checkpoints load(String sidecar) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(storage.openRead(sidecar))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("字符检查点格式错误: " + sidecar);
+            }
+            int count = in.readInt();
+            long totalBytes = in.readLong();
+            long totalChars = in.readLong();
+            long totalLines = in.readLong();
+            long[] bytes = new long[count];
+            long[] chars = new long[count];
+            long[] lines = new long[count];
+            for (int i = 0; i < count; i++) {
+                bytes[i] = in.readLong();
+                chars[i] = in.readLong();
+                lines[i] = in.readLong();
+            }
+            return new Checkpoints(bytes, chars, lines, totalBytes, totalChars, totalLines);
+        }
+    }
+
+    private static final class LongList {
+        private long[] values = new long[64];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.moonpointer.xs.component;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+
+/**
+ * 小说编码识别与 UTF-8 归一化
+ * 上传时只读取一遍输入流：先用开头的样本识别编码 (BOM / UTF-16 高字节分布 / UTF-8 校验 / GBK、Big5 常用字打分)，
+ * 再边解码边以无 BOM 的 UTF-8 写入目标文件，阅读时只需处理 UTF-8
+ * 样本是 UTF-8 时其余部分边校验边拷贝，中途遇到无法按 UTF-8 解码的字节 (如 ASCII 开头、GBK 正文)，
+ * 对剩下的内容重新识别编码并转码
+ */
+@Slf4j
+@Component
+public class NovelEncodingNormalizer {
+
+    private static final int SAMPLE_SIZE = 64 * 1024;
+
+    private static final Charset GB18030 = Charset.forName("GB18030");
+    private static final Charset BIG5 = Charset.forName("Big5");
+
+    // 简体 / 繁体常用字，用于区分 GBK 与 Big5 解码结果
+    private static final String COMMON_SIMPLIFIED = "的一是不了在人有我他这个们中来上大为和国地到以说时要就出会可也你对生能而子那得于着下自之年过发后作里用道行所然家种事成方多经么去法学如都同现当没动面起看定天分还进好小部其些主样理心她本前开但因只从想实";
+    private static final String COMMON_TRADITIONAL = "的一是不了在人有我他這個們中來上大為和國地到以說時要就出會可也你對生能而子那得於著下自之年過發後作裡用道行所然家種事成方多經麼去法學如都同現當沒動面起看定天分還進好小部其些主樣理心她本前開但因只從想實";
+
+    /**
+     * 从输入流识别编码并以 UTF-8 写入 output，写完后关闭 output
+     * 写入的同时用 digest 计算转换后内容的摘要 (可为 null)
+     * @return 识别出的原始编码名称 (开头是 UTF-8、其后换了编码时为正文的编码)
+     */
+    public String normalize(InputStream input, OutputStream output, MessageDigest digest) throws IOException {
+        OutputStream file = output;
+        if (digest != null) file = new DigestOutputStream(file, digest);
+        try (OutputStream out = new BufferedOutputStream(file, SAMPLE_SIZE)) {
+            return convert(input, out, true).name();
+        }
+    }
+
+    /**
+     * 用开头的样本识别编码后写入 out
+     * @param head 是否从文件开头读起 (开头才有 BOM；否则输入以无法按 UTF-8 解码的字节开头，不会是 UTF-8)
+     */
+    private Charset convert(InputStream input, OutputStream out, boolean head) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(input, SAMPLE_SIZE);
+        in.mark(SAMPLE_SIZE);
+        byte[] sample = in.readNBytes(SAMPLE_SIZE);
+        in.reset();
+
+        Charset charset = detect(sample, sample.length);
+        if (head) {
+            in.skipNBytes(bomLength(sample));
+        } else if (charset == StandardCharsets.UTF_8) {
+            charset = GB18030;
+        }
+        if (charset != StandardCharsets.UTF_8) {
+            transcode(in, charset, out);
+            return charset;
+        }
+
+        // 样本是 UTF-8，其余部分边校验边原样拷贝 (已去掉 BOM)
+        InputStream rest = copyUtf8(in, out);
+        if (rest == null) return charset;
+        Charset body = convert(rest, out, false);
+        log.info("小说开头为 UTF-8，其后的内容按 {} 转码", body.name());
+        return body;
+    }
+
+    /**
+     * 按 UTF-8 严格校验并原样拷贝，遇到无法解码的字节时停下
+     * @return 从该字节开始的剩余输入，全部合法时返回 null
+     */
+    private InputStream copyUtf8(InputStream in, OutputStream out) throws IOException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        byte[] buffer = new byte[16 * 1024];
+        CharBuffer chars = CharBuffer.allocate(buffer.length);
+        // 上一块末尾被截断的半个字符，留到下一块开头
+        int carry = 0;
+        while (true) {
+            int n = in.read(buffer, carry, buffer.length - carry);
+            boolean eof = n < 0;
+            ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, carry + Math.max(n, 0));
+            CoderResult result;
+            do {
+                chars.clear();
+                result = decoder.decode(bytes, chars, eof);
+            } while (result.isOverflow());
+
+            out.write(buffer, 0, bytes.position());
+            if (result.isError()) {
+                return new SequenceInputStream(
+                        new ByteArrayInputStream(buffer, bytes.position(), bytes.remaining()), in);
+            }
+            if (eof) return null;
+            carry = bytes.remaining();
+            System.arraycopy(buffer, bytes.position(), buffer, 0, carry);
+        }
+    }
+
+    /**
+     * 根据样本识别编码
+     */
+    public Charset detect(byte[] sample, int length) {
+        if (length >= 3 && (sample[0] & 0xFF) == 0xEF && (sample[1] & 0xFF) == 0xBB && (sample[2] & 0xFF) == 0xBF) {
+            return StandardCharsets.UTF_8;
+        }
+        if (length >= 2 && (sample[0] & 0xFF) == 0xFF && (sample[1] & 0xFF) == 0xFE) {
+            return StandardCharsets.UTF_16LE;
+        }
+        if (length >= 2 && (sample[0] & 0xFF) == 0xFE && (sample[1] & 0xFF) == 0xFF) {
+            return StandardCharsets.UTF_16BE;
+        }
+
+        // 无 BOM 的 UTF-16：每个字符的高字节落在固定的奇数 (LE) 或偶数 (BE) 位置，
+        // 且几乎都是 0x00 (ASCII)、0x30 (CJK 标点)、0x4E-0x9F (常用汉字)、0xFF (全角符号)
+        int evenHigh = 0, oddHigh = 0;
+        for (int i = 0; i + 1 < length; i += 2) {
+            if (isUtf16HighByte(sample[i])) evenHigh++;
+            if (isUtf16HighByte(sample[i + 1])) oddHigh++;
+        }
+        int pairs = Math.max(1, length / 2);
+        if (oddHigh * 10 > pairs * 9 && evenHigh * 2 < pairs) return StandardCharsets.UTF_16LE;
+        if (evenHigh * 10 > pairs * 9 && oddHigh * 2 < pairs) return StandardCharsets.UTF_16BE;
+
+        if (isValid(sample, length, StandardCharsets.UTF_8)) {
+            return StandardCharsets.UTF_8;
+        }
+
+        // GBK / Big5：排除无法解码的，再按常用字出现次数打分
+        int gbScore = isValid(sample, length, GB18030) ? score(sample, length, GB18030, COMMON_SIMPLIFIED) : -1;
+        int big5Score = isValid(sample, length, BIG5) ? score(sample, length, BIG5, COMMON_TRADITIONAL) : -1;
+        return big5Score > gbScore ? BIG5 : GB18030;
+    }
+
+    private boolean isUtf16HighByte(byte b) {
+        int v = b & 0xFF;
+        return v == 0x00 || v == 0x20 || v == 0x30 || v == 0xFF || (v >= 0x4E && v <= 0x9F);
+    }
+
+    private int bomLength(byte[] sample) {
+        if (sample.length >= 3 && (sample[0] & 0xFF) == 0xEF && (sample[1] & 0xFF) == 0xBB && (sample[2] & 0xFF) == 0xBF) {
+            return 3;
+        }
+        if (sample.length >= 2 && ((sample[0] & 0xFF) == 0xFF && (sample[1] & 0xFF) == 0xFE
+                || (sample[0] & 0xFF) == 0xFE && (sample[1] & 0xFF) == 0xFF)) {
+            return 2;
+        }
+        return 0;
+    }
+
+    /**
+     * 样本能否被严格解码，样本末尾被截断的半个字符不算错误
+     */
+    private boolean isValid(byte[] sample, int length, Charset charset) {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer in = ByteBuffer.wrap(sample, 0, length);
+        CharBuffer out = CharBuffer.allocate(length + 1);
+        CoderResult result = decoder.decode(in, out, false);
+        if (result.isError()) {
+            return false;
+        }
+        return in.remaining() < 4;
+    }
+
+    private int score(byte[] sample, int length, Charset charset, String commonChars) {
+        String text = new String(sample, 0, length, charset);
+        int score = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (commonChars.indexOf(text.charAt(i)) >= 0) score++;
+        }
+        return score;
+    }
+
+    private void transcode(InputStream in, Charset charset, OutputStream out) throws IOException {
+        Reader reader = new InputStreamReader(in, charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE));
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        char[] buffer = new char[16 * 1024];
+        int n;
+        while ((n = reader.read(buffer)) != -1) {
+            writer.write(buffer, 0, n);
+        }
+        writer.flush();
+    }
+}
@@ -0,0 +1,323 @@
+package com.moonpointer.xs.component;
+
+import jakarta.annotation.PreDestroy;
+import com.moonpointer.xs.utils.NovelBlockFormat;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 小说文件句柄注册表
+ * 按 fileName 共享只读 FileChannel，使用线程安全的位置读取 (pread)，
+ * 读缓冲区池化复用，空闲句柄定时关闭
+ * 分块压缩格式 (NovelBlockFormat) 的文件在这里透明解压，调用方看到的始终是原文偏移
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NovelFileRegistry {
+
+    private final NovelStorage storage;
+
+    // 句柄空闲多久后关闭
+    @Value("${app.novel-handle.idle-seconds:300}")
+    private long idleSeconds;
+
+    // 池化缓冲区大小，超过此大小的请求临时分配
+    @Value("${app.novel-handle.buffer-size:65536}")
+    private int bufferSize;
+
+    // 缓冲池最多保留的缓冲区个数
+    @Value("${app.novel-handle.buffer-pool-size:64}")
+    private int bufferPoolSize;
+
+    private final ConcurrentHashMap<String, Handle> handles = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledCount = new AtomicInteger();
+
+    /**
+     * 从 position 开始读满 dst (或读到文件末尾)
+     * @return 实际读取字节数，已在文件末尾时返回 -1
+     */
+    public int read(String fileName, long position, ByteBuffer dst) throws IOException {
+        Handle handle = acquire(fileName);
+        try {
+            if (handle.blocks != null) {
+                return readBlocks(handle, position, dst);
+            }
+            int total = 0;
+            while (dst.hasRemaining()) {
+                // FileChannel 的位置读取不改变通道自身 position，多线程共享安全
+                int n = handle.channel.read(dst, position + total);
+                if (n < 0) break;
+                total += n;
+            }
+            return total == 0 && dst.hasRemaining() ? -1 : total;
+        } finally {
+            handle.release();
+        }
+    }
+
+    // 文件总字节数 (压缩文件返回原文长度)
+    public long size(String fileName) throws IOException {
+        Handle handle = acquire(fileName);
+        try {
+            return handle.blocks != null ? handle.blocks.length() : handle.channel.size();
+        } finally {
+            handle.release();
+        }
+    }
+
+    // 是否为分块压缩格式
+    public boolean isCompressed(String fileName) throws IOException {
+        Handle handle = acquire(fileName);
+        try {
+            return handle.blocks != null;
+        } finally {
+            handle.release();
+        }
+    }
+
+    /**
+     * 把 [position, position + count) 直接从文件通道传输到 target
+     * target 为 socket/文件通道时由内核完成拷贝，不经过堆内存；压缩文件只能解压后写出
+     */
+    public long transferTo(String fileName, long position, long count, WritableByteChannel target) throws IOException {
+        Handle handle = acquire(fileName);
+        try {
+            long sent = 0;
+            if (handle.blocks != null) {
+                ByteBuffer buffer = borrowBuffer(bufferSize);
+                try {
+                    while (sent < count) {
+                        buffer.clear().limit((int) Math.min(bufferSize, count - sent));
+                        int n = readBlocks(handle, position + sent, buffer);
+                        if (n <= 0) break;
+                        buffer.flip();
+                        while (buffer.hasRemaining()) target.write(buffer);
+                        sent += n;
+                    }
+                } finally {
+                    returnBuffer(buffer);
+                }
+                return sent;
+            }
+            while (sent < count) {
+                long n = handle.channel.transferTo(position + sent, count - sent, target);
+                if (n <= 0) break;
+                sent += n;
+            }
+            return sent;
+        } finally {
+            handle.release();
+        }
+    }
+
+    /**
+     * 按原文顺序读取整个文件的输入流 (压缩文件边读边解压)
+     */
+    public InputStream openStream(String fileName) {
+        return new InputStream() {
+            private long position;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) return 0;
+                int n = NovelFileRegistry.this.read(fileName, position, ByteBuffer.wrap(b, off, len));
+                if (n > 0) position += n;
+                return n;
+            }
+        };
+    }
+
+    // 磁盘上的绝对路径，文件不在本地磁盘上时为 null
+    public Path path(String fileName) {
+        Path path = storage.localPath(fileName);
+        return path != null ? path.toAbsolutePath() : null;
+    }
+
+    // 借出一个缓冲区，limit 已设为 size
+    public ByteBuffer borrowBuffer(int size) {
+        if (size > bufferSize) {
+            return ByteBuffer.allocate(size);
+        }
+        ByteBuffer buffer = bufferPool.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(bufferSize);
+        } else {
+            pooledCount.decrementAndGet();
+        }
+        buffer.clear().limit(size);
+        return buffer;
+    }
+
+    // 归还缓冲区，非池化尺寸或池已满时直接丢弃
+    public void returnBuffer(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != bufferSize) return;
+        if (pooledCount.incrementAndGet() <= bufferPoolSize) {
+            bufferPool.offer(buffer);
+        } else {
+            pooledCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * 文件被替换或删除时调用，关闭旧句柄
+     * 正在进行的读取会在释放引用后再关闭
+     */
+    public void invalidate(String fileName) {
+        Handle handle = handles.remove(fileName);
+        if (handle != null) {
+            handle.retire();
+        }
+    }
+
+    /**
+     * 定时关闭空闲句柄
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void closeIdleHandles() {
+        long deadline = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(idleSeconds);
+        handles.forEach((fileName, handle) -> {
+            if (handle.lastAccess < deadline && handle.tryClose()) {
+                handles.remove(fileName, handle);
+                log.debug("关闭空闲小说句柄: {}", fileName);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        handles.values().forEach(Handle::retire);
+        handles.clear();
+    }
+
+    // 解压覆盖 [position, position + dst.remaining()) 的块并拷贝到 dst
+    private int readBlocks(Handle handle, long position, ByteBuffer dst) throws IOException {
+        NovelBlockFormat.Index index = handle.blocks;
+        if (position >= index.length()) return -1;
+        int total = 0;
+        while (dst.hasRemaining() && position + total < index.length()) {
+            long pos = position + total;
+            int block = (int) (pos / index.blockSize());
+            byte[] raw = handle.block(block);
+            int offset = (int) (pos - (long) block * index.blockSize());
+            int n = Math.min(dst.remaining(), raw.length - offset);
+            dst.put(raw, offset, n);
+            total += n;
+        }
+        return total;
+    }
+
+    private Handle acquire(String fileName) throws IOException {
+        while (true) {
+            Handle handle;
+            try {
+                handle = handles.computeIfAbsent(fileName, this::open);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (handle.retain()) {
+                return handle;
+            }
+            // 句柄刚被关闭，移除后重新打开
+            handles.remove(fileName, handle);
+        }
+    }
+
+    private Handle open(String fileName) {
+        FileChannel channel = null;
+        try {
+            channel = storage.openRead(fileName);
+            return new Handle(channel, NovelBlockFormat.readIndex(channel));
+        } catch (IOException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private record CachedBlock(int index, byte[] data) {
+    }
+
+    private static final class Handle {
+        final FileChannel channel;
+        // 分块压缩文件的块索引，普通文本为 null
+        final NovelBlockFormat.Index blocks;
+        // 最近解压的块，顺序翻页时大多命中
+        volatile CachedBlock lastBlock;
+        // 引用计数，-1 表示已关闭
+        final AtomicInteger refs = new AtomicInteger();
+        volatile long lastAccess = System.currentTimeMillis();
+        volatile boolean retired;
+
+        Handle(FileChannel channel, NovelBlockFormat.Index blocks) {
+            this.channel = channel;
+            this.blocks = blocks;
+        }
+
+        byte[] block(int index) throws IOException {
+            CachedBlock cached = lastBlock;
+            if (cached != null && cached.index == index) return cached.data;
+            byte[] data = NovelBlockFormat.readBlock(channel, blocks, index);
+            lastBlock = new CachedBlock(index, data);
+            return data;
+        }
+
+        boolean retain() {
+            while (true) {
+                int r = refs.get();
+                if (r < 0) return false;
+                if (refs.compareAndSet(r, r + 1)) {
+                    lastAccess = System.currentTimeMillis();
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (refs.decrementAndGet() == 0 && retired) {
+                tryClose();
+            }
+        }
+
+        void retire() {
+            retired = true;
+            tryClose();
+        }
+
+        boolean tryClose() {
+            if (!refs.compareAndSet(0, -1)) return false;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("关闭小说句柄失败", e);
+            }
+            return true;
+        }
+    }
+}
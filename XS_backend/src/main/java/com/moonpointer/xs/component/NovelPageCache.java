@@ -0,0 +1,239 @@
+package com.moonpointer.xs.component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 小说分页两级缓存
+ * 一级：进程内 LRU，按字节预算淘汰；二级：Redis，带过期时间
+ * Key: (fileName, start, size)，文件按内容摘要命名，内容相同的多本小说共用缓存页
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NovelPageCache {
+
+    // Key: novel:page:{fileName}:{start}:{size}，值: {nextStart}:{totalSize}:{charsBefore}:{content}
+    private static final String REDIS_PREFIX = "novel:page:";
+    // 每个条目的固定开销估算 (key、链表节点、对象头)
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final StringRedisTemplate redisTemplate;
+
+    @Value("${app.novel-cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    @Value("${app.novel-cache.redis-enabled:true}")
+    private boolean redisEnabled;
+
+    @Value("${app.novel-cache.redis-ttl-minutes:30}")
+    private long redisTtlMinutes;
+
+    private final LinkedHashMap<PageKey, Entry> lru = new LinkedHashMap<>(256, 0.75f, true);
+    private long usedBytes;
+
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder redisHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    // 预读写入的页数，以及其中后来真正被读者命中的页数
+    private final LongAdder prefetched = new LongAdder();
+    private final LongAdder prefetchHits = new LongAdder();
+
+    public record PageKey(String fileName, long start, int size) {
+    }
+
+    // 一级缓存条目，记录是否由预读写入
+    private static final class Entry {
+        final Page page;
+        volatile boolean prefetched;
+
+        Entry(Page page, boolean prefetched) {
+            this.page = page;
+            this.prefetched = prefetched;
+        }
+    }
+
+    /**
+     * 解码后的一页内容
+     * charsBefore: 本页之前的字符数，加载时由检查点算一次，之后命中缓存直接用；-1 表示不可用
+     */
+    public record Page(String content, long start, long nextStart, long totalSize, long charsBefore) {
+        public Page(String content, long start, long nextStart, long totalSize) {
+            this(content, start, nextStart, totalSize, -1);
+        }
+
+        public Page withCharsBefore(long chars) {
+            return new Page(content, start, nextStart, totalSize, chars);
+        }
+
+        // 读到本页末尾时的字符数
+        public long charsThrough() {
+            return charsBefore + content.codePointCount(0, content.length());
+        }
+
+        int weight() {
+            return content.length() * 2 + ENTRY_OVERHEAD;
+        }
+    }
+
+    public Page get(String fileName, long start, int size) {
+        PageKey key = new PageKey(fileName, start, size);
+        Entry entry;
+        synchronized (this) {
+            entry = lru.get(key);
+        }
+        if (entry != null) {
+            localHits.increment();
+            if (entry.prefetched) {
+                entry.prefetched = false;
+                prefetchHits.increment();
+            }
+            return entry.page;
+        }
+
+        Page page = getFromRedis(key);
+        if (page != null) {
+            redisHits.increment();
+            putLocal(key, page, false);
+            return page;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 预读专用：查一级、二级缓存但不计入命中统计，二级命中时提升到一级
+     */
+    public Page peek(String fileName, long start, int size) {
+        PageKey key = new PageKey(fileName, start, size);
+        synchronized (this) {
+            Entry entry = lru.get(key);
+            if (entry != null) return entry.page;
+        }
+        Page page = getFromRedis(key);
+        if (page != null) {
+            putLocal(key, page, false);
+        }
+        return page;
+    }
+
+    public void put(String fileName, int size, Page page) {
+        put(fileName, size, page, false);
+    }
+
+    public void putPrefetched(String fileName, int size, Page page) {
+        prefetched.increment();
+        put(fileName, size, page, true);
+    }
+
+    private void put(String fileName, int size, Page page, boolean fromPrefetch) {
+        PageKey key = new PageKey(fileName, page.start(), size);
+        putLocal(key, page, fromPrefetch);
+        if (redisEnabled) {
+            try {
+                String value = page.nextStart() + ":" + page.totalSize() + ":" + page.charsBefore() + ":" + page.content();
+                redisTemplate.opsForValue().set(redisKey(key), value, redisTtlMinutes, TimeUnit.MINUTES);
+            } catch (Exception e) {
+                log.debug("写入分页缓存失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 小说文件被删除时清除该文件所有缓存页
+     */
+    public void invalidate(String fileName) {
+        synchronized (this) {
+            Iterator<Map.Entry<PageKey, Entry>> it = lru.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<PageKey, Entry> entry = it.next();
+                if (entry.getKey().fileName().equals(fileName)) {
+                    usedBytes -= entry.getValue().page.weight();
+                    it.remove();
+                }
+            }
+        }
+        if (redisEnabled) {
+            try {
+                ScanOptions options = ScanOptions.scanOptions().match(REDIS_PREFIX + fileName + ":*").count(500).build();
+                List<String> keys = new ArrayList<>();
+                try (Cursor<String> cursor = redisTemplate.scan(options)) {
+                    cursor.forEachRemaining(keys::add);
+                }
+                if (!keys.isEmpty()) {
+                    redisTemplate.delete(keys);
+                }
+            } catch (Exception e) {
+                log.warn("清除 {} 的 Redis 分页缓存失败", fileName, e);
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (this) {
+            stats.put("entries", lru.size());
+            stats.put("usedBytes", usedBytes);
+        }
+        stats.put("maxBytes", maxBytes);
+        stats.put("localHits", localHits.sum());
+        stats.put("redisHits", redisHits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictions", evictions.sum());
+        long prefetchedPages = prefetched.sum();
+        long prefetchHitPages = prefetchHits.sum();
+        stats.put("prefetched", prefetchedPages);
+        stats.put("prefetchHits", prefetchHitPages);
+        stats.put("prefetchHitRate", prefetchedPages == 0 ? 0.0 : (double) prefetchHitPages / prefetchedPages);
+        return stats;
+    }
+
+    private synchronized void putLocal(PageKey key, Page page, boolean fromPrefetch) {
+        int weight = page.weight();
+        if (weight > maxBytes) return;
+
+        Entry old = lru.put(key, new Entry(page, fromPrefetch));
+        if (old != null) usedBytes -= old.page.weight();
+        usedBytes += weight;
+
+        // 按访问顺序从最久未使用的开始淘汰
+        Iterator<Entry> it = lru.values().iterator();
+        while (usedBytes > maxBytes && it.hasNext()) {
+            usedBytes -= it.next().page.weight();
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    private Page getFromRedis(PageKey key) {
+        if (!redisEnabled) return null;
+        try {
+            String value = redisTemplate.opsForValue().get(redisKey(key));
+            if (value == null) return null;
+            int first = value.indexOf(':');
+            int second = value.indexOf(':', first + 1);
+            int third = value.indexOf(':', second + 1);
+            long nextStart = Long.parseLong(value.substring(0, first));
+            long totalSize = Long.parseLong(value.substring(first + 1, second));
+            long charsBefore = Long.parseLong(value.substring(second + 1, third));
+            return new Page(value.substring(third + 1), key.start(), nextStart, totalSize, charsBefore);
+        } catch (Exception e) {
+            log.debug("读取分页缓存失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private String redisKey(PageKey key) {
+        return REDIS_PREFIX + key.fileName() + ":" + key.start() + ":" + key.size();
+    }
+}
@@ -0,0 +1,219 @@
+package com.moonpointer.xs.component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * 热门小说整本常驻内存 (堆外)
+ * 普通文件用只读内存映射，压缩文件解压到直接缓冲区；读取一页只是切片 + UTF-8 解码，不走系统调用
+ * Windows 下映射未被 GC 回收前文件无法删除 (删除小说后 storage.delete 会失败)，一律读入直接缓冲区
+ * 由 rebalance 按阅读热度挑选，总字节数不超过预算；物理内存紧张时每轮只释放最冷的一本，下一轮再看
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NovelPinnedCache {
+
+    private static final boolean MMAP_SUPPORTED = !System.getProperty("os.name", "").startsWith("Windows");
+
+    private final NovelFileRegistry fileRegistry;
+
+    @Value("${app.novel-pin.max-bytes:268435456}")
+    private long maxBytes;
+
+    @Value("${app.novel-pin.top-n:10}")
+    private int topN;
+
+    // 系统空闲物理内存低于该值时释放常驻的小说
+    @Value("${app.novel-pin.min-free-bytes:536870912}")
+    private long minFreeBytes;
+
+    // fileName -> 整本内容 (只读，位置 0 对应原文第 0 字节)
+    private final Map<String, ByteBuffer> pinned = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder pins = new LongAdder();
+    private final LongAdder releases = new LongAdder();
+
+    /**
+     * 已常驻时从内存读取一页，按 UTF-8 字符边界截断；未常驻返回 null
+     */
+    public NovelPageCache.Page read(String fileName, long start, int size) {
+        ByteBuffer content = pinned.get(fileName);
+        if (content == null) return null;
+        hits.increment();
+
+        long fileLength = content.capacity();
+        if (start >= fileLength) {
+            return new NovelPageCache.Page("", start, start, fileLength);
+        }
+        int from = (int) start;
+        int length = (int) Math.min(size, fileLength - start);
+        // 读满一页且未到文件末尾时，回退到最后一个完整字符之后
+        if (length == size && start + size < fileLength) {
+            int check = length - 1;
+            while (check > 0 && (content.get(from + check) & 0xC0) == 0x80) check--;
+            int lead = content.get(from + check) & 0xFF;
+            int charLength = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : lead >= 0xC0 ? 2 : 1;
+            if (check + charLength > length) length = check;
+        }
+        if (length == 0) return new NovelPageCache.Page("", start, start, fileLength);
+
+        ByteBuffer slice = content.slice(from, length);
+        String text;
+        try {
+            text = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .decode(slice)
+                    .toString();
+        } catch (CharacterCodingException e) {
+            // REPLACE 模式下不会发生
+            throw new IllegalStateException(e);
+        }
+        return new NovelPageCache.Page(text, start, start + length, fileLength);
+    }
+
+    public boolean isPinned(String fileName) {
+        return pinned.containsKey(fileName);
+    }
+
+    /**
+     * 常驻的整本内容 (只读)，未常驻返回 null
+     */
+    public ByteBuffer content(String fileName) {
+        return pinned.get(fileName);
+    }
+
+    /**
+     * 按热度从高到低调整常驻集合：最热的 top-N 本在预算内常驻，其余释放
+     */
+    public synchronized void rebalance(List<String> hottest) {
+        List<String> wanted = hottest.size() > topN ? hottest.subList(0, topN) : hottest;
+
+        // 不再是热门的先释放
+        for (String fileName : new ArrayList<>(pinned.keySet())) {
+            if (!wanted.contains(fileName)) unpin(fileName);
+        }
+
+        long used = usedBytes();
+        for (String fileName : wanted) {
+            if (pinned.containsKey(fileName)) continue;
+            if (lowOnMemory()) break;
+            try {
+                long size = fileRegistry.size(fileName);
+                if (size > Integer.MAX_VALUE || used + size > maxBytes) continue;
+                pinned.put(fileName, load(fileName, (int) size));
+                used += size;
+                pins.increment();
+                log.info("小说常驻内存: {} ({} 字节)", fileName, size);
+            } catch (IOException e) {
+                log.warn("小说常驻内存失败: {}", fileName, e);
+            }
+        }
+
+        // 物理内存紧张：释放最冷的一本，释放的内存要等 GC 回收后才体现在空闲内存里，
+        // 立即重新判断会把剩下的全部释放，所以每轮只放一本
+        if (lowOnMemory()) {
+            for (int i = wanted.size() - 1; i >= 0; i--) {
+                if (pinned.containsKey(wanted.get(i))) {
+                    unpin(wanted.get(i));
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 释放常驻内容，直接缓冲区和内存映射在没有引用后由 GC 回收
+     */
+    public void unpin(String fileName) {
+        if (pinned.remove(fileName) != null) {
+            releases.increment();
+            log.info("小说释放常驻内存: {}", fileName);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("novels", pinned.size());
+        stats.put("usedBytes", usedBytes());
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits.sum());
+        stats.put("pins", pins.sum());
+        stats.put("releases", releases.sum());
+        return stats;
+    }
+
+    private long usedBytes() {
+        long used = 0;
+        for (ByteBuffer buffer : pinned.values()) used += buffer.capacity();
+        return used;
+    }
+
+    private ByteBuffer load(String fileName, int size) throws IOException {
+        Path path = fileRegistry.path(fileName);
+        if (MMAP_SUPPORTED && path != null && !fileRegistry.isCompressed(fileName)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                // 预先读入页面，之后的访问不再缺页
+                mapped.load();
+                return mapped.asReadOnlyBuffer();
+            }
+        }
+        ByteBuffer direct = ByteBuffer.allocateDirect(size);
+        try (InputStream in = fileRegistry.openStream(fileName);
+             ReadableByteChannel src = Channels.newChannel(in)) {
+            while (direct.hasRemaining() && src.read(direct) >= 0) {
+                // 读满为止
+            }
+        }
+        direct.flip();
+        return direct.asReadOnlyBuffer();
+    }
+
+    private boolean lowOnMemory() {
+        return availableMemory() < minFreeBytes;
+    }
+
+    // Linux 下用 MemAvailable (含可回收的页缓存)，其他系统退回空闲物理内存
+    private static long availableMemory() {
+        Path meminfo = Paths.get("/proc/meminfo");
+        if (Files.isReadable(meminfo)) {
+            try (Stream<String> lines = Files.lines(meminfo)) {
+                Optional<String> line = lines.filter(l -> l.startsWith("MemAvailable:")).findFirst();
+                if (line.isPresent()) {
+                    return Long.parseLong(line.get().replaceAll("\\D+", "")) * 1024;
+                }
+            } catch (IOException | NumberFormatException e) {
+                // 退回 MXBean
+            }
+        }
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            return os.getFreeMemorySize();
+        }
+        return Long.MAX_VALUE;
+    }
+}
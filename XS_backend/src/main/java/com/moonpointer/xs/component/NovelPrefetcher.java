@@ -0,0 +1,116 @@
+package com.moonpointer.xs.component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 阅读预读
+ * 返回一页后在后台把接下来的 K 页读入分页缓存，隐藏冷门小说的磁盘延迟
+ * 同一本书同一位置同时只有一个预读任务，线程池和队列都有上限，满了直接丢弃
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NovelPrefetcher {
+
+    private final NovelPageCache pageCache;
+
+    // 预读页数 K，0 表示关闭
+    @Value("${app.novel-prefetch.pages:2}")
+    private int prefetchPages;
+
+    private final ExecutorService prefetchExecutor = new ThreadPoolExecutor(
+            2, 2, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(200),
+            Executors.defaultThreadFactory(),
+            // 队列满时抛出拒绝异常，由 schedule 清理去重标记后丢弃
+            new ThreadPoolExecutor.AbortPolicy()
+    );
+
+    // 正在预读的 (fileName, start, size)
+    private final Set<NovelPageCache.PageKey> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder scheduled = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder diskReads = new LongAdder();
+
+    /**
+     * 从磁盘读取 start 开始的一页
+     */
+    @FunctionalInterface
+    public interface PageLoader {
+        NovelPageCache.Page load(long start) throws IOException;
+    }
+
+    /**
+     * 安排预读 nextStart 开始的 K 页
+     */
+    public void schedule(String fileName, long nextStart, int size, PageLoader loader) {
+        if (prefetchPages <= 0) return;
+
+        NovelPageCache.PageKey key = new NovelPageCache.PageKey(fileName, nextStart, size);
+        if (!inFlight.add(key)) {
+            deduplicated.increment();
+            return;
+        }
+        scheduled.increment();
+        try {
+            prefetchExecutor.execute(() -> {
+                try {
+                    prefetch(fileName, nextStart, size, loader);
+                } finally {
+                    inFlight.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key);
+            rejected.increment();
+        }
+    }
+
+    private void prefetch(String fileName, long start, int size, PageLoader loader) {
+        long position = start;
+        try {
+            for (int i = 0; i < prefetchPages; i++) {
+                NovelPageCache.Page page = pageCache.peek(fileName, position, size);
+                if (page == null) {
+                    page = loader.load(position);
+                    diskReads.increment();
+                    // 已到文件末尾
+                    if (page.nextStart() <= page.start()) return;
+                    pageCache.putPrefetched(fileName, size, page);
+                }
+                position = page.nextStart();
+                if (position >= page.totalSize()) return;
+            }
+        } catch (Exception e) {
+            log.debug("预读 {} 失败: {}", fileName, e.getMessage());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pages", prefetchPages);
+        stats.put("scheduled", scheduled.sum());
+        stats.put("deduplicated", deduplicated.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("diskReads", diskReads.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,409 @@
+package com.moonpointer.xs.component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.Channels;
+import java.util.*;
+
+/**
+ * 小说全文检索倒排索引
+ * 中日韩文字按二元组 (bigram) 切分，拉丁字母/数字按单词切分，
+ * 每个词项记录出现过的“段”起始字节偏移 (段约 2KB，按行切分，正好对应一页)
+ * 每本书一个索引段文件 (.search)，上传时增量生成；倒排表按差值 + 变长整数编码存成 byte[]
+ * 另有一份全库词典 (词项 -> 含该词项的文件)，生成索引段时合并进去，启动时从已有的索引段加载，
+ * 检索时先查词典，只打开包含全部词项的书
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NovelSearchIndex {
+
+    public static final String SUFFIX = ".search";
+
+    private static final int MAGIC = 0x58535349; // "XSSI"
+    private static final int VERSION = 1;
+    // 超长的行按这个长度强制切开
+    private static final int MAX_PIECE_BYTES = 8 * 1024;
+    // 内存中最多保留的索引段数
+    private static final int MAX_LOADED = 32;
+
+    private final NovelFileRegistry fileRegistry;
+    private final NovelStorage storage;
+
+    @Value("${app.novel-search.segment-size:2048}")
+    private int segmentSize;
+
+    // fileName -> 已加载的索引段，按访问顺序淘汰
+    private final LinkedHashMap<String, Segment> loaded = new LinkedHashMap<>(64, 0.75f, true);
+
+    // 全库词典：词项 -> 含该词项的文件序号 (升序)；序号 -> 文件名，文件删除后置 null
+    // 删除的文件在各词项里留下的序号查询时跳过，不逐个词项清理
+    private final Map<String, IntList> dictionary = new HashMap<>();
+    private final List<String> dictionaryFiles = new ArrayList<>();
+    private final Map<String, Integer> dictionaryIds = new HashMap<>();
+
+    /**
+     * 一本书的索引段：词项 -> 编码后的倒排表
+     */
+    public record Segment(int segmentSize, Map<String, byte[]> postings) {
+        // 词项出现过的段偏移 (升序)，不存在时返回空数组
+        public long[] lookup(String token) {
+            byte[] encoded = postings.get(token);
+            return encoded == null ? new long[0] : decode(encoded);
+        }
+    }
+
+    /**
+     * 获取已有的索引段，没有索引文件时返回 null
+     */
+    public Segment get(String fileName) throws IOException {
+        synchronized (loaded) {
+            Segment segment = loaded.get(fileName);
+            if (segment != null) return segment;
+        }
+        String sidecar = sidecarName(fileName);
+        if (!storage.exists(sidecar)) return null;
+        Segment segment = load(sidecar);
+        cache(fileName, segment);
+        return segment;
+    }
+
+    /**
+     * 流式扫描小说并写入索引文件
+     */
+    public Segment build(String fileName) throws IOException {
+        Map<String, PostingBuilder> builders = new HashMap<>();
+        Tokenizer tokenizer = new Tokenizer(builders);
+
+        byte[] chunk = new byte[64 * 1024];
+        byte[] piece = new byte[MAX_PIECE_BYTES];
+        int pieceLen = 0;
+        long pieceStart = 0;
+        long segmentStart = 0;
+        long pos = 0;
+
+        try (InputStream in = fileRegistry.openStream(fileName)) {
+            int n;
+            while ((n = in.read(chunk)) != -1) {
+                for (int i = 0; i < n; i++, pos++) {
+                    byte b = chunk[i];
+                    if (b == '\n') {
+                        segmentStart = nextSegment(segmentStart, pieceStart);
+                        tokenizer.accept(piece, pieceLen, segmentStart, true);
+                        pieceLen = 0;
+                        pieceStart = pos + 1;
+                        continue;
+                    }
+                    piece[pieceLen++] = b;
+                    if (pieceLen == piece.length) {
+                        // 超长行在最后一个完整 UTF-8 字符处切开，剩余的半个字符留到下一片
+                        int cut = pieceLen - 1;
+                        while (cut > 0 && (piece[cut] & 0xC0) == 0x80) cut--;
+                        if (cut == 0) cut = pieceLen; // 非法 UTF-8，整片处理
+                        segmentStart = nextSegment(segmentStart, pieceStart);
+                        tokenizer.accept(piece, cut, segmentStart, false);
+                        System.arraycopy(piece, cut, piece, 0, pieceLen - cut);
+                        pieceStart += cut;
+                        pieceLen -= cut;
+                    }
+                }
+            }
+        }
+        segmentStart = nextSegment(segmentStart, pieceStart);
+        tokenizer.accept(piece, pieceLen, segmentStart, true);
+
+        Map<String, byte[]> postings = new HashMap<>(builders.size() * 2);
+        builders.forEach((token, builder) -> postings.put(token, builder.encode()));
+        Segment segment = new Segment(segmentSize, postings);
+        write(sidecarName(fileName), segment);
+        cache(fileName, segment);
+        addToDictionary(fileName, postings.keySet());
+        log.info("全文索引已生成: {} 共 {} 个词项", fileName, postings.size());
+        return segment;
+    }
+
+    public void invalidate(String fileName) {
+        synchronized (loaded) {
+            loaded.remove(fileName);
+        }
+        synchronized (dictionary) {
+            Integer id = dictionaryIds.remove(fileName);
+            if (id != null) dictionaryFiles.set(id, null);
+        }
+    }
+
+    /**
+     * 把已有索引段的词项合并进全库词典 (启动时对每本书调用一次)
+     * @return 没有索引文件时返回 false
+     */
+    public boolean loadDictionary(String fileName) throws IOException {
+        if (inDictionary(fileName)) return true;
+        String sidecar = sidecarName(fileName);
+        if (!storage.exists(sidecar)) return false;
+        addToDictionary(fileName, loadTerms(sidecar));
+        return true;
+    }
+
+    public boolean inDictionary(String fileName) {
+        synchronized (dictionary) {
+            return dictionaryIds.containsKey(fileName);
+        }
+    }
+
+    /**
+     * 词典中包含全部词项的文件
+     */
+    public Set<String> filesContaining(List<String> tokens) {
+        synchronized (dictionary) {
+            int[] result = null;
+            int length = 0;
+            for (String token : tokens) {
+                IntList ids = dictionary.get(token);
+                if (ids == null) return Set.of();
+                if (result == null) {
+                    result = Arrays.copyOf(ids.values, ids.size);
+                    length = ids.size;
+                    continue;
+                }
+                // 两个升序序列求交集，结果写回 result
+                int i = 0, j = 0, k = 0;
+                while (i < length && j < ids.size) {
+                    if (result[i] == ids.values[j]) {
+                        result[k++] = result[i];
+                        i++;
+                        j++;
+                    } else if (result[i] < ids.values[j]) {
+                        i++;
+                    } else {
+                        j++;
+                    }
+                }
+                length = k;
+                if (length == 0) return Set.of();
+            }
+            Set<String> files = new HashSet<>();
+            for (int i = 0; i < length; i++) {
+                String fileName = dictionaryFiles.get(result[i]);
+                if (fileName != null) files.add(fileName);
+            }
+            return files;
+        }
+    }
+
+    public String sidecarName(String fileName) {
+        return fileName + SUFFIX;
+    }
+
+    /**
+     * 把查询串切成与索引相同的词项
+     */
+    public static List<String> tokenize(String text) {
+        Map<String, PostingBuilder> builders = new LinkedHashMap<>();
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        new Tokenizer(builders).accept(bytes, bytes.length, 0, true);
+        return new ArrayList<>(builders.keySet());
+    }
+
+    // 当前段已超过 segmentSize 时，从 pieceStart (行首) 开始新的一段
+    private long nextSegment(long segmentStart, long pieceStart) {
+        return pieceStart - segmentStart >= segmentSize ? pieceStart : segmentStart;
+    }
+
+    // 文件按内容命名，内容不变词项也不变，已在词典中的文件不重复加入
+    private void addToDictionary(String fileName, Collection<String> terms) {
+        synchronized (dictionary) {
+            if (dictionaryIds.containsKey(fileName)) return;
+            // 新序号总是最大的，追加到末尾各词项仍保持升序
+            int id = dictionaryFiles.size();
+            dictionaryFiles.add(fileName);
+            dictionaryIds.put(fileName, id);
+            for (String term : terms) dictionary.computeIfAbsent(term, k -> new IntList()).add(id);
+        }
+    }
+
+    private void cache(String fileName, Segment segment) {
+        synchronized (loaded) {
+            loaded.put(fileName, segment);
+            if (loaded.size() > MAX_LOADED) {
+                Iterator<String> it = loaded.keySet().iterator();
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * 索引文件格式：
+     * magic(int) version(int) segmentSize(int) tokenCount(int)
+     * 每个词项：token(UTF) length(int) postings(byte[length])
+     */
+    private void write(String sidecar, Segment segment) throws IOException {
+        try (NovelStorage.Draft draft = storage.create(sidecar)) {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(draft.out(), 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(segment.segmentSize());
+                out.writeInt(segment.postings().size());
+                for (Map.Entry<String, byte[]> entry : segment.postings().entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    out.write(entry.getValue());
+                }
+            }
+            draft.commit(sidecar, true);
+        }
+    }
+
+    private Segment load(String sidecar) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(storage.openRead(sidecar)), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("全文索引格式错误: " + sidecar);
+            }
+            int size = in.readInt();
+            int count = in.readInt();
+            Map<String, byte[]> postings = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String token = in.readUTF();
+                byte[] encoded = new byte[in.readInt()];
+                in.readFully(encoded);
+                postings.put(token, encoded);
+            }
+            return new Segment(size, postings);
+        }
+    }
+
+    // 只读词项，跳过倒排表
+    private List<String> loadTerms(String sidecar) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(storage.openRead(sidecar)), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("全文索引格式错误: " + sidecar);
+            }
+            in.readInt();
+            int count = in.readInt();
+            List<String> terms = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                terms.add(in.readUTF());
+                in.skipNBytes(in.readInt());
+            }
+            return terms;
+        }
+    }
+
+    static long[] decode(byte[] encoded) {
+        long[] values = new long[encoded.length];
+        int count = 0;
+        long value = 0;
+        int i = 0;
+        while (i < encoded.length) {
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = encoded[i++];
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            value += delta;
+            values[count++] = value;
+        }
+        return Arrays.copyOf(values, count);
+    }
+
+    private static final class IntList {
+        private int[] values = new int[2];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * 单个词项的倒排表，写入时去重，只保存差值的变长编码
+     */
+    private static final class PostingBuilder {
+        private byte[] data = new byte[8];
+        private int length;
+        private long last = -1;
+
+        void add(long offset) {
+            if (offset == last) return;
+            long delta = last < 0 ? offset : offset - last;
+            last = offset;
+            if (length + 10 > data.length) data = Arrays.copyOf(data, data.length * 2);
+            while ((delta & ~0x7FL) != 0) {
+                data[length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            data[length++] = (byte) delta;
+        }
+
+        byte[] encode() {
+            return Arrays.copyOf(data, length);
+        }
+    }
+
+    /**
+     * 切词：相邻的中日韩字符组成二元组，字母数字组成单词 (小写)
+     * 行内跨片段时保留上一个字符，换行后重置
+     */
+    private static final class Tokenizer {
+        private final Map<String, PostingBuilder> builders;
+        private int prevCjk;
+        private final StringBuilder word = new StringBuilder();
+
+        Tokenizer(Map<String, PostingBuilder> builders) {
+            this.builders = builders;
+        }
+
+        void accept(byte[] bytes, int length, long segmentStart, boolean endOfLine) {
+            String text = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            for (int i = 0; i < text.length(); ) {
+                int c = text.codePointAt(i);
+                i += Character.charCount(c);
+                if (isCjk(c)) {
+                    flushWord(segmentStart);
+                    if (prevCjk != 0) {
+                        emit(new StringBuilder(4).appendCodePoint(prevCjk).appendCodePoint(c).toString(), segmentStart);
+                    }
+                    prevCjk = c;
+                } else if (Character.isLetterOrDigit(c)) {
+                    prevCjk = 0;
+                    word.appendCodePoint(Character.toLowerCase(c));
+                } else {
+                    prevCjk = 0;
+                    flushWord(segmentStart);
+                }
+            }
+            if (endOfLine) {
+                flushWord(segmentStart);
+                prevCjk = 0;
+            }
+        }
+
+        private void flushWord(long segmentStart) {
+            if (word.length() > 0) {
+                emit(word.toString(), segmentStart);
+                word.setLength(0);
+            }
+        }
+
+        private void emit(String token, long segmentStart) {
+            builders.computeIfAbsent(token, k -> new PostingBuilder()).add(segmentStart);
+        }
+
+        static boolean isCjk(int c) {
+            Character.UnicodeScript script = Character.UnicodeScript.of(c);
+            return script == Character.UnicodeScript.HAN
+                    || script == Character.UnicodeScript.HIRAGANA
+                    || script == Character.UnicodeScript.KATAKANA
+                    || script == Character.UnicodeScript.HANGUL;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.moonpointer.xs.component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 小说文件存储
+ * 正文 (按内容摘要命名) 和旁边的索引文件 (.chapters / .checkpoints / .search) 都按名字存取，
+ * 调用方不关心文件实际落在哪个目录；写入一律先写草稿再原子提交，读者看不到写了一半的文件
+ */
+public interface NovelStorage {
+
+    /**
+     * 打开只读通道，文件不存在时抛出 NoSuchFileException
+     * 返回的通道支持位置读取，可被多个线程共享
+     */
+    FileChannel openRead(String name) throws IOException;
+
+    /**
+     * 新建一个草稿，写完后 commit 到指定名字；未提交的草稿在 close 时丢弃
+     */
+    Draft create() throws IOException;
+
+    /**
+     * 同上，name 为预计提交的名字：存储据此把草稿直接建在该名字将要落到的位置，提交时不必跨盘搬运
+     */
+    default Draft create(String name) throws IOException {
+        return create();
+    }
+
+    boolean exists(String name);
+
+    long size(String name) throws IOException;
+
+    // 最后修改时间 (毫秒)
+    long lastModified(String name) throws IOException;
+
+    /**
+     * 删除文件
+     * @return 文件是否存在
+     */
+    boolean delete(String name) throws IOException;
+
+    /**
+     * 列出以 suffix 结尾的文件名 (不含草稿等以 . 开头的临时文件)
+     */
+    List<String> list(String suffix) throws IOException;
+
+    /**
+     * 文件在本地磁盘上的路径，供 sendfile / mmap 使用
+     * 文件不存在或不在本地磁盘上时返回 null，调用方应退回到 openRead
+     */
+    Path localPath(String name);
+
+    /**
+     * 各存储位置的容量
+     */
+    List<Volume> volumes();
+
+    /**
+     * 一个存储位置 (目录或挂载点) 的总容量与可用空间
+     */
+    record Volume(String location, long totalBytes, long usableBytes) {
+    }
+
+    /**
+     * 写入中的文件
+     */
+    interface Draft extends Closeable {
+
+        // 可读写、可按位置写入的通道
+        FileChannel channel();
+
+        // 顺序写入的输出流，关闭输出流会同时关闭通道，之后仍可 commit
+        default OutputStream out() {
+            return Channels.newOutputStream(channel());
+        }
+
+        // 已写入的字节数
+        long size() throws IOException;
+
+        /**
+         * 以 name 提交，提交后即可读取
+         * @param replace 已存在同名文件时是否替换
+         * @return 是否提交成功，replace 为 false 且文件已存在时返回 false (草稿随之丢弃)
+         */
+        boolean commit(String name, boolean replace) throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+}
@@ -0,0 +1,72 @@
+package com.moonpointer.xs.component;
+
+import com.moonpointer.xs.utils.NovelBlockFormat;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * 小说存储迁移命令：把存储中已有的 TXT 原地转换为分块压缩格式
+ * 启动时带上 --migrate-novel-storage 即执行，转换期间服务照常可读
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NovelStorageMigration implements ApplicationRunner {
+
+    private static final String OPTION = "migrate-novel-storage";
+
+    private final NovelStorage storage;
+    private final NovelFileRegistry fileRegistry;
+
+    @Value("${app.novel-storage.block-size:65536}")
+    private int blockSize;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption(OPTION)) return;
+
+        List<String> files;
+        try {
+            files = storage.list(".txt");
+        } catch (IOException e) {
+            log.error("遍历小说存储失败", e);
+            return;
+        }
+
+        int converted = 0, skipped = 0, failed = 0;
+        long before = 0, after = 0;
+        for (String file : files) {
+            try (NovelStorage.Draft draft = storage.create(file)) {
+                long size, compressed;
+                // 提交替换前先关闭原文件，Windows 下打开中的文件不能被替换
+                try (FileChannel in = storage.openRead(file)) {
+                    if (NovelBlockFormat.readIndex(in) != null) {
+                        skipped++;
+                        continue;
+                    }
+                    size = in.size();
+                    compressed = NovelBlockFormat.compress(in, draft.channel(), blockSize);
+                }
+                draft.commit(file, true);
+                // 原文偏移不变，章节索引和分页缓存仍然有效，只需重新打开句柄
+                fileRegistry.invalidate(file);
+                before += size;
+                after += compressed;
+                converted++;
+            } catch (IOException e) {
+                failed++;
+                log.error("小说压缩失败: {}", file, e);
+            }
+        }
+        log.info("小说存储迁移完成: 转换 {} 本, 跳过 {} 本, 失败 {} 本, {} -> {} 字节",
+                converted, skipped, failed, before, after);
+    }
+}
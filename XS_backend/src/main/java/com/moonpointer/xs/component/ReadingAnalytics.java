@@ -0,0 +1,178 @@
+package com.moonpointer.xs.component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 阅读统计
+ * 读取路径只做无锁累加 (LongAdder / AtomicLongArray / 并发集合)，定时把增量刷到 Redis：
+ * 阅读页数 -> novel:stats:reads (hash, novelId -> 次数)
+ * 位置热度 -> novel:stats:heat:{novelId} (hash, 百分位桶 -> 次数)
+ * 独立读者 -> novel:stats:uv:{novelId} (HyperLogLog)
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReadingAnalytics {
+
+    // 热度桶数：按全书位置百分比划分
+    public static final int HEAT_BUCKETS = 100;
+
+    private static final String READS_KEY = "novel:stats:reads";
+    private static final String HEAT_PREFIX = "novel:stats:heat:";
+    private static final String UV_PREFIX = "novel:stats:uv:";
+
+    private final StringRedisTemplate redisTemplate;
+
+    // 每次刷新时热度衰减的系数 (10 秒一次约 2 分钟减半)
+    private static final double DECAY = 0.95;
+
+    private final Map<Long, Counters> counters = new ConcurrentHashMap<>();
+    // 近期热度：每次刷新 score = score * DECAY + 本轮阅读页数，用于挑选常驻内存的小说
+    private final Map<Long, Double> recentScores = new ConcurrentHashMap<>();
+
+    /**
+     * 某本书自上次刷新以来的增量
+     */
+    private static final class Counters {
+        final LongAdder reads = new LongAdder();
+        final AtomicLongArray heat = new AtomicLongArray(HEAT_BUCKETS);
+        final Set<Long> readers = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * 汇总结果：阅读页数、独立读者数 (HyperLogLog 估算)、各位置桶的阅读次数
+     */
+    public record NovelStats(long novelId, long reads, long uniqueReaders, long[] heatmap) {
+    }
+
+    /**
+     * 记录一次页面阅读 (读取路径调用，不访问 Redis)
+     */
+    public void record(long novelId, Long userId, long byteOffset, long totalSize) {
+        Counters c = counters.computeIfAbsent(novelId, k -> new Counters());
+        c.reads.increment();
+        if (totalSize > 0) {
+            int bucket = (int) Math.min(HEAT_BUCKETS - 1, Math.max(0, byteOffset * HEAT_BUCKETS / totalSize));
+            c.heat.incrementAndGet(bucket);
+        }
+        if (userId != null) c.readers.add(userId);
+    }
+
+    @Scheduled(fixedDelayString = "${app.reading-analytics.flush-millis:10000}")
+    public synchronized void flush() {
+        for (Map.Entry<Long, Counters> entry : counters.entrySet()) {
+            long novelId = entry.getKey();
+            Counters c = entry.getValue();
+
+            long reads = c.reads.sumThenReset();
+            long[] heat = new long[HEAT_BUCKETS];
+            for (int i = 0; i < HEAT_BUCKETS; i++) heat[i] = c.heat.getAndSet(i, 0);
+            List<String> readers = new ArrayList<>();
+            for (Iterator<Long> it = c.readers.iterator(); it.hasNext(); ) {
+                readers.add(String.valueOf(it.next()));
+                it.remove();
+            }
+            recentScores.merge(novelId, (double) reads, (old, add) -> old * DECAY + add);
+            if (reads == 0 && readers.isEmpty()) continue;
+
+            try {
+                // 一本书的增量在一次管道往返中写完
+                redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    if (reads > 0) {
+                        connection.hashCommands().hIncrBy(bytes(READS_KEY), bytes(String.valueOf(novelId)), reads);
+                    }
+                    byte[] heatKey = bytes(HEAT_PREFIX + novelId);
+                    for (int i = 0; i < HEAT_BUCKETS; i++) {
+                        if (heat[i] > 0) connection.hashCommands().hIncrBy(heatKey, bytes(String.valueOf(i)), heat[i]);
+                    }
+                    if (!readers.isEmpty()) {
+                        byte[][] values = new byte[readers.size()][];
+                        for (int i = 0; i < values.length; i++) values[i] = bytes(readers.get(i));
+                        connection.hyperLogLogCommands().pfAdd(bytes(UV_PREFIX + novelId), values);
+                    }
+                    return null;
+                });
+            } catch (Exception e) {
+                // 刷新失败时把增量放回，下次重试
+                log.warn("阅读统计写入 Redis 失败: {}", e.getMessage());
+                c.reads.add(reads);
+                for (int i = 0; i < HEAT_BUCKETS; i++) if (heat[i] > 0) c.heat.addAndGet(i, heat[i]);
+                readers.forEach(r -> c.readers.add(Long.valueOf(r)));
+            }
+        }
+    }
+
+    /**
+     * 近期最热的 limit 本书 (本节点)，从热到冷
+     */
+    public List<Long> hottest(int limit) {
+        // 热度衰减到接近 0 的不再参与
+        recentScores.values().removeIf(score -> score < 0.5);
+        return recentScores.entrySet().stream()
+                .sorted(Map.Entry.<Long, Double>comparingByValue().reversed())
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    /**
+     * 按阅读页数排序的前 limit 本书 (含尚未刷新的增量)
+     */
+    public List<NovelStats> top(int limit) {
+        Map<Long, Long> reads = new HashMap<>();
+        try {
+            redisTemplate.opsForHash().entries(READS_KEY)
+                    .forEach((k, v) -> reads.put(Long.valueOf(k.toString()), Long.valueOf(v.toString())));
+        } catch (Exception e) {
+            log.warn("读取阅读统计失败: {}", e.getMessage());
+        }
+        counters.forEach((id, c) -> reads.merge(id, c.reads.sum(), Long::sum));
+
+        List<NovelStats> result = new ArrayList<>();
+        reads.entrySet().stream()
+                .sorted(Map.Entry.<Long, Long>comparingByValue().reversed())
+                .limit(limit)
+                .forEach(e -> result.add(stats(e.getKey(), e.getValue())));
+        return result;
+    }
+
+    private NovelStats stats(long novelId, long reads) {
+        long[] heatmap = new long[HEAT_BUCKETS];
+        long unique = 0;
+        try {
+            redisTemplate.opsForHash().entries(HEAT_PREFIX + novelId)
+                    .forEach((k, v) -> heatmap[Integer.parseInt(k.toString())] += Long.parseLong(v.toString()));
+            unique = redisTemplate.opsForHyperLogLog().size(UV_PREFIX + novelId);
+        } catch (Exception e) {
+            log.warn("读取小说 {} 阅读统计失败: {}", novelId, e.getMessage());
+        }
+        Counters c = counters.get(novelId);
+        if (c != null) {
+            for (int i = 0; i < HEAT_BUCKETS; i++) heatmap[i] += c.heat.get(i);
+            // 未刷新的读者可能已计入 HyperLogLog，这里取较大值作为下限
+            unique = Math.max(unique, c.readers.size());
+        }
+        return new NovelStats(novelId, reads, unique, heatmap);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @PreDestroy
+    public void drain() {
+        flush();
+    }
+}
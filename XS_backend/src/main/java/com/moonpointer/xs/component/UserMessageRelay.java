@@ -0,0 +1,346 @@
+package com.moonpointer.xs.component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 多节点 STOMP 推送中继
+ * 内置的 SimpleBroker 只能推给连在本 JVM 上的用户：各节点把自己的会话登记到 Redis
+ * (ws:user:{userId} hash，节点号 -> 会话数)，推送时本节点有会话就直接投递，
+ * 其他节点上的会话通过该节点的 Redis 频道 (ws:relay:{nodeId}) 转发，由对方节点本地投递；
+ * 广播走公共频道 ws:relay:all
+ * 每个节点定时刷新心跳 (ws:node:{nodeId}，带过期时间)，心跳过期即视为已下线：
+ * 注销会话时顺带剔除用户在已下线节点上的登记，另有定时任务整体清理下线节点的登记，
+ * 用户在集群里已没有会话的同时移出在线列表；转发时 PUBLISH 没有订阅者且心跳已过期的节点按同样方式清理
+ * (心跳还在说明只是订阅断开重连中，保留登记)
+ * 节点启动时清理自己上次残留的登记，Redis 不可用时不影响启动，由心跳定时重试；
+ * 心跳因长时间停顿断过、登记可能已被其他节点清掉时，重新登记本节点的会话
+ * 本机验证：本地 Redis + 两个实例 (--server.port=8081 --app.node-id=1)，两个用户分别连到不同端口互发消息
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UserMessageRelay {
+
+    private static final String USER_PREFIX = "ws:user:";
+    private static final String NODE_USERS_PREFIX = "ws:node-users:";
+    private static final String HEARTBEAT_PREFIX = "ws:node:";
+    private static final String NODES_KEY = "ws:nodes";
+    private static final String ONLINE_KEY = "app:online_users";
+    private static final String CHANNEL_PREFIX = "ws:relay:";
+    private static final String BROADCAST_CHANNEL = "ws:relay:all";
+
+    // 减少本节点的会话数，减到 0 时删除登记；两步合在一个脚本里，中间插入的同一用户的 register 不会被误删
+    // KEYS: 用户的 hash, 本节点的用户集合；ARGV: 节点号, 用户ID
+    private static final DefaultRedisScript<Long> UNREGISTER_SCRIPT = new DefaultRedisScript<>(
+            "local left = redis.call('HINCRBY', KEYS[1], ARGV[1], -1) " +
+            "if left <= 0 then " +
+            "  redis.call('HDEL', KEYS[1], ARGV[1]) " +
+            "  redis.call('SREM', KEYS[2], ARGV[2]) " +
+            "end " +
+            "return left",
+            Long.class);
+
+    // 删除用户在某节点上的登记，已没有任何节点时移出在线列表
+    // KEYS: 用户的 hash, 在线用户集合；ARGV: 节点号, 用户ID；返回 1 表示用户已下线
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('HDEL', KEYS[1], ARGV[1]) " +
+            "if redis.call('HLEN', KEYS[1]) == 0 then " +
+            "  redis.call('SREM', KEYS[2], ARGV[2]) " +
+            "  return 1 " +
+            "end " +
+            "return 0",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final SimpUserRegistry userRegistry;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.node-id:0}")
+    private int nodeId;
+
+    // 心跳过期时间，需明显大于心跳间隔
+    @Value("${app.ws-relay.node-ttl-seconds:30}")
+    private long nodeTtlSeconds;
+
+    private RedisMessageListenerContainer container;
+    // 本节点已登记的会话 (会话 ID -> 用户 ID)，断开事件可能重复触发，只减一次
+    private final Map<String, String> sessions = new ConcurrentHashMap<>();
+    // 节点是否已加入集群 (写入心跳、清理过上次残留的登记)
+    private volatile boolean joined;
+
+    private final LongAdder localDeliveries = new LongAdder();
+    private final LongAdder relayed = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder prunedNodes = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisTemplate.getConnectionFactory());
+        container.addMessageListener((message, pattern) -> onRelay(message),
+                List.of(new ChannelTopic(CHANNEL_PREFIX + nodeId), new ChannelTopic(BROADCAST_CHANNEL)));
+        container.afterPropertiesSet();
+        heartbeat();
+    }
+
+    /**
+     * 会话建立时登记
+     */
+    public void register(String userId, String sessionId) {
+        if (sessions.putIfAbsent(sessionId, userId) != null) return;
+        redisTemplate.opsForHash().increment(USER_PREFIX + userId, node(), 1);
+        redisTemplate.opsForSet().add(NODE_USERS_PREFIX + nodeId, userId);
+    }
+
+    /**
+     * 会话断开时注销
+     * @return 该用户在整个集群是否还有会话
+     */
+    public boolean unregister(String userId, String sessionId) {
+        String key = USER_PREFIX + userId;
+        if (sessions.remove(sessionId) != null) {
+            redisTemplate.execute(UNREGISTER_SCRIPT, List.of(key, NODE_USERS_PREFIX + nodeId), node(), userId);
+        }
+        // 已下线节点上的登记不算
+        int remaining = 0;
+        for (Object node : redisTemplate.opsForHash().keys(key)) {
+            if (node().equals(node) || alive(node.toString())) {
+                remaining++;
+            } else {
+                redisTemplate.opsForHash().delete(key, node);
+            }
+        }
+        return remaining > 0;
+    }
+
+    /**
+     * 推送给用户在集群中的所有会话 (替代 convertAndSendToUser)
+     */
+    public void sendToUser(String userId, String destination, Object payload) {
+        if (userRegistry.getUser(userId) != null) {
+            messagingTemplate.convertAndSendToUser(userId, destination, payload);
+            localDeliveries.increment();
+        }
+        sendToRemoteNodes(userId, destination, payload);
+    }
+
+    /**
+     * 只推送给其他节点上的会话 (本节点的会话由调用方自行投递)
+     */
+    public void sendToRemoteNodes(String userId, String destination, Object payload) {
+        String key = USER_PREFIX + userId;
+        Map<Object, Object> nodes = redisTemplate.opsForHash().entries(key);
+        if (nodes.isEmpty() || (nodes.size() == 1 && nodes.containsKey(node()))) return;
+
+        String envelope = envelope(userId, destination, payload);
+        for (Object node : nodes.keySet()) {
+            if (node().equals(node)) continue;
+            Long receivers = redisTemplate.convertAndSend(CHANNEL_PREFIX + node, envelope);
+            if (receivers != null && receivers > 0) {
+                relayed.increment();
+            } else if (!alive(node.toString())) {
+                // 节点已下线，撤销它的全部登记
+                int offline = releaseDeadNode(node.toString());
+                log.info("节点 {} 无订阅且心跳已过期，清理其会话登记: {} 个用户下线", node, offline);
+            }
+        }
+    }
+
+    /**
+     * 广播到所有节点的订阅者 (替代 convertAndSend)
+     */
+    public void broadcast(String destination, Object payload) {
+        messagingTemplate.convertAndSend(destination, payload);
+        redisTemplate.convertAndSend(BROADCAST_CHANNEL, envelope(null, destination, payload));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("nodeId", nodeId);
+        stats.put("localSessions", sessions.size());
+        stats.put("localDeliveries", localDeliveries.sum());
+        stats.put("relayed", relayed.sum());
+        stats.put("received", received.sum());
+        stats.put("prunedNodes", prunedNodes.sum());
+        return stats;
+    }
+
+    /**
+     * 刷新本节点心跳；心跳已过期 (长时间停顿) 时其他节点可能已清掉本节点的登记，按本地会话重新登记
+     * 还没订阅转发频道、还没加入集群 (启动时 Redis 不可用) 时先补上
+     */
+    @Scheduled(fixedDelayString = "${app.ws-relay.heartbeat-millis:10000}")
+    public void heartbeat() {
+        if (!container.isListening()) {
+            try {
+                container.stop();
+                container.start();
+            } catch (Exception e) {
+                log.warn("订阅转发频道失败: {}", e.getMessage());
+            }
+        }
+        try {
+            if (!joined) {
+                join();
+                return;
+            }
+            Boolean expired = redisTemplate.opsForValue().setIfAbsent(HEARTBEAT_PREFIX + nodeId,
+                    Long.toString(System.currentTimeMillis()), Duration.ofSeconds(nodeTtlSeconds));
+            if (!Boolean.TRUE.equals(expired)) {
+                redisTemplate.expire(HEARTBEAT_PREFIX + nodeId, Duration.ofSeconds(nodeTtlSeconds));
+            } else if (!sessions.isEmpty()) {
+                reregister();
+            }
+        } catch (Exception e) {
+            log.warn("刷新节点心跳失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 清理心跳已过期节点的全部登记
+     */
+    @Scheduled(fixedDelayString = "${app.ws-relay.heartbeat-millis:10000}", initialDelayString = "${app.ws-relay.heartbeat-millis:10000}")
+    public void pruneDeadNodes() {
+        try {
+            Set<String> nodes = redisTemplate.opsForSet().members(NODES_KEY);
+            if (nodes == null) return;
+            for (String node : nodes) {
+                if (node().equals(node) || alive(node)) continue;
+                int offline = releaseDeadNode(node);
+                log.info("节点 {} 心跳已过期，清理其会话登记: {} 个用户下线", node, offline);
+            }
+        } catch (Exception e) {
+            log.warn("清理下线节点失败: {}", e.getMessage());
+        }
+    }
+
+    // 写入心跳、登记节点，并清理上次运行 (可能是崩溃退出) 留下的已无效登记
+    private void join() {
+        redisTemplate.opsForValue().set(HEARTBEAT_PREFIX + nodeId,
+                Long.toString(System.currentTimeMillis()), Duration.ofSeconds(nodeTtlSeconds));
+        redisTemplate.opsForSet().add(NODES_KEY, node());
+        int offline = releaseNode(node());
+        if (offline > 0) log.info("清理节点 {} 残留的会话登记: {} 个用户下线", nodeId, offline);
+        joined = true;
+        // Redis 恢复前已经连上来的会话
+        if (!sessions.isEmpty()) reregister();
+    }
+
+    private int releaseDeadNode(String node) {
+        int offline = releaseNode(node);
+        redisTemplate.opsForSet().remove(NODES_KEY, node);
+        prunedNodes.increment();
+        return offline;
+    }
+
+    private boolean alive(String node) {
+        return Boolean.TRUE.equals(redisTemplate.hasKey(HEARTBEAT_PREFIX + node));
+    }
+
+    /**
+     * 撤销节点的全部登记，集群里已没有会话的用户移出在线列表并广播下线
+     * @return 下线的用户数
+     */
+    private int releaseNode(String node) {
+        String nodeUsersKey = NODE_USERS_PREFIX + node;
+        Set<String> users = redisTemplate.opsForSet().members(nodeUsersKey);
+        int offline = 0;
+        if (users != null) {
+            for (String userId : users) {
+                Long released = redisTemplate.execute(RELEASE_SCRIPT,
+                        List.of(USER_PREFIX + userId, ONLINE_KEY), node, userId);
+                if (released != null && released == 1) offline++;
+            }
+        }
+        redisTemplate.delete(nodeUsersKey);
+        if (offline > 0) broadcast("/topic/notice", "offline");
+        return offline;
+    }
+
+    // 按本地会话重建本节点的登记
+    private void reregister() {
+        Map<String, Long> counts = new HashMap<>();
+        for (String userId : sessions.values()) counts.merge(userId, 1L, Long::sum);
+        for (Map.Entry<String, Long> e : counts.entrySet()) {
+            redisTemplate.opsForHash().put(USER_PREFIX + e.getKey(), node(), e.getValue().toString());
+            redisTemplate.opsForSet().add(NODE_USERS_PREFIX + nodeId, e.getKey());
+            redisTemplate.opsForSet().add(ONLINE_KEY, e.getKey());
+        }
+        redisTemplate.opsForSet().add(NODES_KEY, node());
+        log.warn("节点 {} 重新登记 {} 个用户的会话", nodeId, counts.size());
+    }
+
+    // 其他节点转发来的消息在本节点投递
+    private void onRelay(Message message) {
+        try {
+            JsonNode envelope = objectMapper.readTree(new String(message.getBody(), StandardCharsets.UTF_8));
+            if (envelope.path("from").asInt() == nodeId) return;
+            received.increment();
+            String destination = envelope.path("destination").asText();
+            JsonNode payload = envelope.path("payload");
+            JsonNode userId = envelope.get("userId");
+            // 字符串按原样投递，与本地 convertAndSend 发出的内容一致
+            Object body = payload.isTextual() ? payload.asText() : payload;
+            if (userId == null || userId.isNull()) {
+                messagingTemplate.convertAndSend(destination, body);
+            } else {
+                messagingTemplate.convertAndSendToUser(userId.asText(), destination, body);
+            }
+        } catch (Exception e) {
+            log.warn("处理中继消息失败: {}", e.getMessage());
+        }
+    }
+
+    private String envelope(String userId, String destination, Object payload) {
+        ObjectNode envelope = objectMapper.createObjectNode();
+        envelope.put("from", nodeId);
+        envelope.put("userId", userId);
+        envelope.put("destination", destination);
+        envelope.set("payload", objectMapper.valueToTree(payload));
+        return envelope.toString();
+    }
+
+    private String node() {
+        return Integer.toString(nodeId);
+    }
+
+    @PreDestroy
+    public void shutdown() throws Exception {
+        container.destroy();
+        // 正常关闭时撤销本节点的登记和心跳，其他节点不再往这里转发
+        try {
+            redisTemplate.delete(HEARTBEAT_PREFIX + nodeId);
+            redisTemplate.opsForSet().remove(NODES_KEY, node());
+            releaseNode(node());
+        } catch (Exception e) {
+            log.warn("撤销会话登记失败: {}", e.getMessage());
+        }
+    }
+}
@@ -72,7 +72,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.messaging.SessionConnectedEvent;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
@@ -87,7 +87,7 @@ public class WebSocketEventListener {
     private StringRedisTemplate stringRedisTemplate; // 确保用的是 StringRedisTemplate
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private UserMessageRelay messageRelay;
 
     private static final String ONLINE_USER_KEY = "app:online_users";
 
@@ -102,10 +102,12 @@ public class WebSocketEventListener {
             String userId = user.getName();
             log.info("🟢 [WebSocket] 用户上线: {}", userId);
 
-            // 1. 写入 Redis
+            // 1. 登记本节点的会话 (供其他节点转发)，再写入在线列表；
+            // 先登记，清理下线节点时看到该用户还有会话，不会把刚上线的用户移出在线列表
+            messageRelay.register(userId, StompHeaderAccessor.wrap(event.getMessage()).getSessionId());
             stringRedisTemplate.opsForSet().add(ONLINE_USER_KEY, userId);
 
-            messagingTemplate.convertAndSend("/topic/notice", "online");
+            messageRelay.broadcast("/topic/notice", "online");
         } else {
             log.warn("⚠️ [WebSocket] 连接建立，但无法获取用户信息 (Principal is null)");
         }
@@ -122,11 +124,12 @@ public class WebSocketEventListener {
             String userId = user.getName();
             log.info("🔴 [WebSocket] 用户下线: {}", userId);
 
-            // 1. 移除 Redis
+            // 1. 注销会话；集群里没有其他会话 (其他设备/节点) 时才算下线
+            if (messageRelay.unregister(userId, event.getSessionId())) return;
             stringRedisTemplate.opsForSet().remove(ONLINE_USER_KEY, userId);
 
             // 2. 广播通知
-            messagingTemplate.convertAndSend("/topic/notice", "offline");
+            messageRelay.broadcast("/topic/notice", "offline");
         }
     }
 }
\ No newline at end of file
@@ -2,12 +2,19 @@ package com.moonpointer.xs.controller;
 import com.moonpointer.xs.common.PageResult;
 import com.moonpointer.xs.annotation.RequireAdmin;
 import com.moonpointer.xs.common.Result;
+import com.moonpointer.xs.component.NovelStorage;
+import com.moonpointer.xs.dto.NovelDTO;
 import com.moonpointer.xs.entity.SysUser;
 import com.moonpointer.xs.service.AdminService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/api/admin")
 @RequiredArgsConstructor
@@ -30,7 +37,7 @@ public class AdminController {
         return adminService.updateUserStatus(userId, dto.getStatus());
     }
 
-    // 上传小说
+    // 上传小说 (返回导入任务 ID)
     @RequireAdmin
     @PostMapping("/novels/upload")
     public Result<String> uploadNovel(@RequestParam("file") MultipartFile file,
@@ -38,6 +45,100 @@ public class AdminController {
         return adminService.uploadNovel(file, title);
     }
 
+    // 替换小说文件 (返回导入任务 ID)
+    @RequireAdmin
+    @PutMapping("/novels/{novelId}/file")
+    public Result<String> replaceNovelFile(@PathVariable Long novelId,
+                                           @RequestParam("file") MultipartFile file) {
+        return adminService.replaceNovelFile(novelId, file);
+    }
+
+    // 分片上传：建立会话，返回分片大小和分片数
+    @RequireAdmin
+    @PostMapping("/novels/uploads")
+    public Result<NovelDTO.UploadSession> initUpload(@RequestBody NovelDTO.UploadInitReq req) {
+        return adminService.initUpload(req);
+    }
+
+    // 分片上传：查询会话 (缺失的分片)
+    @RequireAdmin
+    @GetMapping("/novels/uploads/{uploadId}")
+    public Result<NovelDTO.UploadSession> getUpload(@PathVariable String uploadId) {
+        return adminService.getUpload(uploadId);
+    }
+
+    // 分片上传：请求体为分片原始字节，X-Chunk-Sha256 为该片摘要
+    @RequireAdmin
+    @PutMapping("/novels/uploads/{uploadId}/chunks/{index}")
+    public Result<String> putUploadChunk(@PathVariable String uploadId, @PathVariable int index,
+                                         @RequestHeader(value = "X-Chunk-Sha256", required = false) String sha256,
+                                         HttpServletRequest request) throws IOException {
+        return adminService.putUploadChunk(uploadId, index, sha256, request.getInputStream());
+    }
+
+    // 分片上传：提交 (返回导入任务 ID)
+    @RequireAdmin
+    @PostMapping("/novels/uploads/{uploadId}/commit")
+    public Result<String> commitUpload(@PathVariable String uploadId) {
+        return adminService.commitUpload(uploadId);
+    }
+
+    // 分片上传：放弃
+    @RequireAdmin
+    @DeleteMapping("/novels/uploads/{uploadId}")
+    public Result<String> abortUpload(@PathVariable String uploadId) {
+        return adminService.abortUpload(uploadId);
+    }
+
+    // 导入任务进度 (上传/替换返回的任务 ID)
+    @RequireAdmin
+    @GetMapping("/novels/jobs/{jobId}")
+    public Result<NovelDTO.IngestJob> getIngestJob(@PathVariable String jobId) {
+        return adminService.getIngestJob(jobId);
+    }
+
+    // 阅读统计 (阅读页数、独立读者、位置热度)
+    @RequireAdmin
+    @GetMapping("/novels/analytics")
+    public Result<List<NovelDTO.ReadStats>> getReadingStats(@RequestParam(required = false) Integer limit) {
+        return adminService.getReadingStats(limit);
+    }
+
+    // 分页缓存命中统计
+    @RequireAdmin
+    @GetMapping("/novels/cache/stats")
+    public Result<Map<String, Object>> getPageCacheStats() {
+        return adminService.getPageCacheStats();
+    }
+
+    // 小说存储容量 (各目录总容量、可用空间)
+    @RequireAdmin
+    @GetMapping("/novels/storage")
+    public Result<List<NovelStorage.Volume>> getStorageVolumes() {
+        return adminService.getStorageVolumes();
+    }
+
+    // 聊天消息异步入库统计
+    @RequireAdmin
+    @GetMapping("/chat/persist/stats")
+    public Result<Map<String, Object>> getChatPersistStats() {
+        return adminService.getChatPersistStats();
+    }
+
+    // 会话最近消息缓存统计
+    @RequireAdmin
+    @GetMapping("/chat/cache/stats")
+    public Result<Map<String, Object>> getChatCacheStats() {
+        return adminService.getChatCacheStats();
+    }
+
+    // 本节点 WebSocket 推送中继统计
+    @RequireAdmin
+    @GetMapping("/ws/relay/stats")
+    public Result<Map<String, Object>> getRelayStats() {
+        return adminService.getRelayStats();
+    }
+
     // 简单的内部 DTO
     @lombok.Data
     static class StatusDTO {
@@ -2,6 +2,7 @@ package com.moonpointer.xs.controller;
 
 import com.moonpointer.xs.common.Result;
 import com.moonpointer.xs.entity.SysUser;
+import com.moonpointer.xs.entity.VO.ConversationVO;
 import com.moonpointer.xs.entity.VO.FriendVO;
 import com.moonpointer.xs.service.ChatService;
 import lombok.RequiredArgsConstructor;
@@ -69,14 +70,23 @@ public class ChatHttpController {
 
     /**
      * 6. 获取聊天历史记录
-     * 支持分页，进入聊天窗口时调用
+     * 游标分页，进入聊天窗口时不带 beforeId，向上翻页时传上一页返回的 nextBeforeId
      */
     @GetMapping("/chat/history")
     public Result<Map<String, Object>> getChatHistory(
             @RequestParam Long friendId,
-            @RequestParam(defaultValue = "1") Integer page,
+            @RequestParam(required = false) Long beforeId,
             @RequestParam(defaultValue = "20") Integer size) {
-        return chatService.getChatHistory(friendId, page, size);
+        return chatService.getChatHistory(friendId, beforeId, size);
+    }
+
+    /**
+     * 6.1 会话列表
+     * 每个会话的最后一条消息、时间与未读数，按最后消息时间倒序
+     */
+    @GetMapping("/chat/conversations")
+    public Result<List<ConversationVO>> getConversations() {
+        return chatService.getConversations();
     }
 
     /**
@@ -1,13 +1,13 @@
 package com.moonpointer.xs.controller;
 
 import com.moonpointer.xs.common.Result;
+import com.moonpointer.xs.component.UserMessageRelay;
 import com.moonpointer.xs.entity.SysChatMsg;
 import com.moonpointer.xs.service.ChatService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller; // 注意是 Controller 不是 RestController
 import java.security.Principal;
 import java.time.LocalDateTime;
@@ -18,7 +18,7 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class ChatWebSocketController {
 
-    private final SimpMessagingTemplate messagingTemplate;
+    private final UserMessageRelay messageRelay;
     private final ChatService chatService;
 
     /**
@@ -57,8 +57,8 @@ public class ChatWebSocketController {
 
             // 5. 推送给接收者
             // 路径: /user/{receiverId}/queue/chat
-            // 前端订阅: /user/queue/chat (Stomp会自动匹配)
-            messagingTemplate.convertAndSendToUser(
+            // 前端订阅: /user/queue/chat (Stomp会自动匹配)，接收方在其他节点时经 Redis 转发
+            messageRelay.sendToUser(
                     String.valueOf(receiverId),
                     "/queue/chat",
                     msg
@@ -1,10 +1,10 @@
 package com.moonpointer.xs.controller;
+import com.moonpointer.xs.component.UserMessageRelay;
 import com.moonpointer.xs.entity.SysChatMsg;
 import com.moonpointer.xs.service.ChatService;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import org.springframework.messaging.handler.annotation.MessageMapping;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
 import java.time.LocalDateTime;
@@ -13,7 +13,7 @@ import java.time.LocalDateTime;
 @RequiredArgsConstructor
 public class ChatWsController {
 
-    private final SimpMessagingTemplate messagingTemplate;
+    private final UserMessageRelay messageRelay;
     private final ChatService chatService;
 
     // 前端发送目的地: /app/private
@@ -31,14 +31,14 @@ public class ChatWsController {
         chatService.saveMessageAsync(dbMsg);
 
         // 2. 推送给接收者
-        // 订阅地址: /user/{userId}/queue/messages
-        messagingTemplate.convertAndSendToUser(
+        // 订阅地址: /user/{userId}/queue/messages，接收方可能连在其他节点
+        messageRelay.sendToUser(
                 String.valueOf(msg.getReceiverId()),
                 "/queue/messages",
                 dbMsg
         );
 
-        messagingTemplate.convertAndSendToUser(
+        messageRelay.sendToUser(
                 String.valueOf(msg.getSenderId()),
                 "/queue/messages",
                 dbMsg
@@ -1,11 +1,21 @@
 package com.moonpointer.xs.controller;
 import com.moonpointer.xs.common.Result;
+import com.moonpointer.xs.component.NovelCatalog;
 import com.moonpointer.xs.dto.NovelDTO;
-import com.moonpointer.xs.entity.SysNovel;
+import com.moonpointer.xs.service.NovelFindService;
+import com.moonpointer.xs.service.NovelSearchService;
 import com.moonpointer.xs.service.NovelService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.util.List;
 
 @RestController
@@ -14,11 +24,24 @@ import java.util.List;
 public class NovelController {
 
     private final NovelService novelService;
+    private final NovelSearchService novelSearchService;
+    private final NovelFindService novelFindService;
 
-    // 获取列表
+    // 获取列表：返回预先序列化的目录快照，If-None-Match 命中时 304
     @GetMapping("/list")
-    public Result<List<SysNovel>> getList() {
-        return novelService.getNovelList();
+    public ResponseEntity<byte[]> getList(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        NovelCatalog.Snapshot catalog = novelService.getNovelList();
+        if (ifNoneMatch != null && (ifNoneMatch.equals("*") || ifNoneMatch.contains(catalog.etag()))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(catalog.etag())
+                    .cacheControl(CacheControl.noCache())
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .eTag(catalog.etag())
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(catalog.json());
     }
 
     // 阅读内容 (核心)
@@ -27,6 +50,40 @@ public class NovelController {
         return novelService.readContent(req);
     }
 
+    // 批量阅读：一次返回连续多页，减少弱网往返
+    @GetMapping("/content/batch")
+    public Result<List<NovelDTO.ReadRes>> readContentBatch(NovelDTO.ReadReq req) {
+        return novelService.readContentBatch(req);
+    }
+
+    // 原始字节流 (支持 Range 断点续传，供离线下载/预取)
+    @GetMapping("/{novelId}/raw")
+    public void downloadRaw(@PathVariable Long novelId, HttpServletRequest request,
+                            HttpServletResponse response) throws IOException {
+        novelService.streamRaw(novelId, request, response);
+    }
+
+    // 章节目录
+    @GetMapping("/{novelId}/chapters")
+    public Result<List<NovelDTO.ChapterItem>> getChapters(@PathVariable Long novelId) {
+        return novelService.getChapters(novelId);
+    }
+
+    // 全文检索：返回命中的书、字节位置和上下文片段
+    @GetMapping("/search")
+    public Result<List<NovelDTO.SearchHit>> search(@RequestParam String keyword,
+                                                   @RequestParam(required = false) Integer limit) {
+        return novelSearchService.search(keyword, limit);
+    }
+
+    // 书内查找下一个：从 from 开始向后找 q 第一次出现的字节位置
+    @GetMapping("/{novelId}/find")
+    public Result<NovelDTO.FindRes> findNext(@PathVariable Long novelId,
+                                             @RequestParam(required = false) Long from,
+                                             @RequestParam String q) {
+        return novelFindService.findNext(novelId, from, q);
+    }
+
     // 获取某本书的书签
     @GetMapping("/bookmark/{novelId}")
     public Result<Long> getBookmark(@PathVariable Long novelId) {
@@ -0,0 +1,45 @@
+package com.moonpointer.xs.controller;
+
+import com.moonpointer.xs.dto.NovelDTO;
+import com.moonpointer.xs.service.ReadingProgressService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
+import org.springframework.stereotype.Controller;
+
+import java.security.Principal;
+
+@Controller
+@RequiredArgsConstructor
+public class ReadingProgressWsController {
+
+    private final ReadingProgressService progressService;
+
+    // 前端发送目的地: /app/progress (每次翻页上报，替代 POST /api/novel/bookmark)
+    @MessageMapping("/progress")
+    public void reportProgress(NovelDTO.ProgressMsg msg, Principal principal,
+                               @Header(SimpMessageHeaderAccessor.SESSION_ID_HEADER) String sessionId) {
+        Long userId = userId(principal);
+        if (userId != null) progressService.report(userId, sessionId, msg);
+    }
+
+    // 订阅 /app/progress/{novelId} 立即拿到当前位置，之后其他设备的进度从 /user/queue/progress 推送
+    @SubscribeMapping("/progress/{novelId}")
+    public NovelDTO.ProgressMsg currentProgress(@DestinationVariable Long novelId, Principal principal) {
+        Long userId = userId(principal);
+        return userId != null ? progressService.current(userId, novelId) : null;
+    }
+
+    // CONNECT 时以用户 ID 作为 Principal 名称，未认证或格式不对时忽略
+    private static Long userId(Principal principal) {
+        if (principal == null) return null;
+        try {
+            return Long.valueOf(principal.getName());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
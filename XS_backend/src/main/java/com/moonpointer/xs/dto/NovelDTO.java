@@ -1,6 +1,10 @@
 package com.moonpointer.xs.dto;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 public class NovelDTO {
 
     @Data
@@ -8,6 +12,10 @@ public class NovelDTO {
         private Long novelId;
         private Long start;    // 起始字节位置
         private Integer size;
+        private Integer chapter; // 按章节阅读：章节序号 (从 0 开始)，传入时忽略 start
+        private Integer count;   // 批量阅读：连续读取的页数
+        private Double percent;  // 按百分比跳转 (0-100，按字符计)，跳到所在行行首，传入时忽略 start
+        private Long line;       // 按行号跳转 (从 0 开始)，传入时忽略 start
     }
 
     @Data
@@ -16,8 +24,14 @@ public class NovelDTO {
         private Long currentStart;// 当前页起始字节
         private Long nextStart;   // 下一页起始字节
         private Long totalSize;   // 总字节数
-        private Double progress;  // 进度百分比
-        public ReadRes(String s, long start, long start1, long fileLength, double v) {
+        private Double progress;  // 进度百分比 (按字符计)
+        private Integer chapter;  // 按章节阅读时的章节序号
+        public ReadRes(String content, long currentStart, long nextStart, long totalSize, double progress) {
+            this.content = content;
+            this.currentStart = currentStart;
+            this.nextStart = nextStart;
+            this.totalSize = totalSize;
+            this.progress = progress;
         }
 
         public ReadRes() {
@@ -25,6 +39,86 @@ public class NovelDTO {
         }
     }
 
+    @Data
+    @AllArgsConstructor
+    public static class ChapterItem {
+        private Integer index;    // 章节序号
+        private String title;     // 章节标题
+        private Long start;       // 起始字节
+        private Long end;         // 结束字节 (不含)
+    }
+
+    @Data
+    public static class SearchHit {
+        private Long novelId;
+        private String title;
+        private Long byteOffset;  // 关键词首字节位置，可直接作为 start 跳转
+        private String snippet;   // 关键词前后的上下文
+        private Integer score;    // 该书包含关键词全部词项的段数 (约 2KB 一段)
+    }
+
+    @Data
+    public static class FindRes {
+        private Long offset;      // 匹配的首字节位置，可直接作为 start 跳转；未找到为空
+        private Long resumeFrom;  // 超时时已扫描到的位置，从这里继续查找不会漏掉
+        private Boolean timedOut; // 是否因超出时间预算而中止
+    }
+
+    @Data
+    public static class IngestJob {
+        private String jobId;
+        private String status;    // QUEUED / RUNNING / SUCCEEDED / FAILED
+        private String stage;     // 当前 (或失败时) 所处阶段
+        private Long novelId;     // 发布后的小说ID
+        private String error;     // 失败原因
+        private LocalDateTime createTime;
+        private List<IngestStage> stages;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class IngestStage {
+        private String name;      // STORE / ENCODE / INDEX / WARM / PUBLISH
+        private String state;     // PENDING / RUNNING / DONE / FAILED
+        private Long millis;      // 耗时 (毫秒)，未完成时为空
+    }
+
+    @Data
+    public static class UploadInitReq {
+        private String fileName;  // 原始文件名 (.txt)
+        private Long totalSize;   // 文件总字节数
+        private Integer chunkSize;// 分片大小，可不传
+        private String title;     // 书名，不传时取文件名
+        private Long novelId;     // 替换已有小说的文件时传入
+        private String sha256;    // 整个文件的摘要 (可选)，提交时校验
+    }
+
+    @Data
+    public static class UploadSession {
+        private String uploadId;
+        private String fileName;
+        private Long totalSize;
+        private Integer chunkSize;
+        private Integer chunkCount;
+        private List<Integer> missing; // 尚未成功上传的分片序号，断线后按此续传
+    }
+
+    @Data
+    public static class ReadStats {
+        private Long novelId;
+        private String title;
+        private Long reads;         // 阅读页数
+        private Long uniqueReaders; // 独立读者数 (HyperLogLog 估算)
+        private long[] heatmap;     // 按全书位置百分比划分的阅读次数
+    }
+
+    @Data
+    public static class ProgressMsg {
+        private Long novelId;
+        private Long byteOffset;
+        private Long updateTime;  // 服务端收到的时间戳 (毫秒)
+    }
+
     @Data
     public static class BookmarkReq {
         private Long novelId;
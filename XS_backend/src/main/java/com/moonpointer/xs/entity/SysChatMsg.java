@@ -8,8 +8,16 @@ public class SysChatMsg {
     private Long id;
     private Long senderId;
     private Long receiverId;
+    private String conversationId; // 会话键，见 conversationOf
     private String content;  // 文本内容或图片URL
     private Integer msgType; // 0:文本, 1:图片
     private LocalDateTime createTime;
     private Integer isRead;
+
+    /**
+     * 两个用户之间的会话键：较小的 ID 在前，双方方向的消息落在同一个键下
+     */
+    public static String conversationOf(Long a, Long b) {
+        return a <= b ? a + "_" + b : b + "_" + a;
+    }
 }
\ No newline at end of file
@@ -9,7 +9,8 @@ public class SysNovel {
     private String title;
     private String fileName;      // 存储在磁盘上的唯一文件名
     private String originalName;  // 原始文件名
-    private Long fileSize;        // 字节数
+    private Long fileSize;        // 字节数 (归一化为 UTF-8 后)
+    private String encoding;      // 上传时识别出的原始编码
     private Long uploaderId;
     private Integer isDeleted;    // 0:正常, 1:删除
     private LocalDateTime createTime;
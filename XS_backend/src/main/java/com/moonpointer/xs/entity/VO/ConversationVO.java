@@ -0,0 +1,22 @@
+package com.moonpointer.xs.entity.VO;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 会话列表项：对方信息 + 最后一条消息 + 未读数
+ */
+@Data
+public class ConversationVO {
+    private Long peerId;
+    private String nickname;
+    private String avatar;
+    private boolean online;
+    private Long lastMsgId;
+    private Long lastSenderId;
+    private String lastContent; // 文本截断后的预览，图片为 [图片]
+    private Integer lastMsgType;
+    private LocalDateTime lastTime;
+    private long unread;
+}
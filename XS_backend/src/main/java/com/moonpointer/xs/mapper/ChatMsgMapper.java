@@ -3,23 +3,73 @@ package com.moonpointer.xs.mapper;
 import com.moonpointer.xs.entity.SysChatMsg;
 import org.apache.ibatis.annotations.*;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 @Mapper
 public interface ChatMsgMapper {
-    @Insert("INSERT INTO sys_chat_msg (sender_id, receiver_id, content, msg_type, create_time) VALUES (#{senderId}, #{receiverId}, #{content}, #{msgType}, #{createTime})")
+    @Insert("INSERT INTO sys_chat_msg (sender_id, receiver_id, conversation_id, content, msg_type, create_time) VALUES (#{senderId}, #{receiverId}, #{conversationId}, #{content}, #{msgType}, #{createTime})")
     @Options(useGeneratedKeys = true, keyProperty = "id")
     void insert(SysChatMsg msg);
 
-    @Select("SELECT * FROM sys_chat_msg " +
-            "WHERE (sender_id = #{userId} AND receiver_id = #{friendId}) " +
-            "   OR (sender_id = #{friendId} AND receiver_id = #{userId}) " +
-            "ORDER BY create_time DESC")
-    List<SysChatMsg> selectHistory(@Param("userId") Long userId, @Param("friendId") Long friendId);
+    /**
+     * 批量写入 (ID 已预先生成)，主键已存在的跳过，预写日志重放时可以重复执行
+     */
+    @Insert("<script>" +
+            "INSERT INTO sys_chat_msg (id, sender_id, receiver_id, conversation_id, content, msg_type, is_read, create_time) VALUES " +
+            "<foreach collection='msgs' item='m' separator=','>" +
+            "(#{m.id}, #{m.senderId}, #{m.receiverId}, #{m.conversationId}, #{m.content}, #{m.msgType}, #{m.isRead}, #{m.createTime})" +
+            "</foreach>" +
+            " ON DUPLICATE KEY UPDATE id = id" +
+            "</script>")
+    int insertBatch(@Param("msgs") Collection<SysChatMsg> msgs);
+
+    /**
+     * 游标分页：会话内 ID 小于 beforeId 的最新 limit 条 (beforeId 为空时从最新一条开始)
+     * 走 idx_conversation (conversation_id, id)，翻到多早的记录代价都一样
+     */
+    @Select("<script>" +
+            "SELECT * FROM sys_chat_msg WHERE conversation_id = #{conversationId}" +
+            "<if test='beforeId != null'> AND id &lt; #{beforeId}</if>" +
+            " ORDER BY id DESC LIMIT #{limit}" +
+            "</script>")
+    List<SysChatMsg> selectHistoryBefore(@Param("conversationId") String conversationId,
+                                         @Param("beforeId") Long beforeId,
+                                         @Param("limit") int limit);
+
+    /**
+     * 重建会话列表用：用户参与的每个会话的最后一条消息
+     */
+    @Select("SELECT m.* FROM sys_chat_msg m JOIN (" +
+            "  SELECT MAX(id) AS id FROM sys_chat_msg " +
+            "  WHERE sender_id = #{userId} OR receiver_id = #{userId} " +
+            "  GROUP BY conversation_id" +
+            ") t ON m.id = t.id")
+    List<SysChatMsg> selectLastMessages(@Param("userId") Long userId);
+
+    /**
+     * 重建会话列表用：各好友发给该用户的未读条数
+     */
+    @Select("SELECT sender_id AS peerId, COUNT(*) AS unread FROM sys_chat_msg " +
+            "WHERE receiver_id = #{userId} AND is_read = 0 GROUP BY sender_id")
+    List<Map<String, Object>> countUnreadBySender(@Param("userId") Long userId);
+
+    /**
+     * 重建会话列表用：发给该用户、ID 不小于 minId (最近几分钟) 的消息 ID，按主键范围扫描
+     */
+    @Select("SELECT id FROM sys_chat_msg WHERE id >= #{minId} AND receiver_id = #{userId}")
+    List<Long> selectReceivedIdsSince(@Param("userId") Long userId, @Param("minId") long minId);
 
     @Update("UPDATE sys_chat_msg SET is_read = 1 " +
             "WHERE sender_id = #{friendId} AND receiver_id = #{userId} AND is_read = 0")
     void updateReadStatus(@Param("friendId") Long friendId, @Param("userId") Long userId);
 
+    @Update("<script>" +
+            "UPDATE sys_chat_msg SET is_read = 1 WHERE id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    void markReadByIds(@Param("ids") Collection<Long> ids);
+
 
 }
\ No newline at end of file
@@ -3,6 +3,8 @@ package com.moonpointer.xs.mapper;
 import com.moonpointer.xs.entity.SysNovelBookmark;
 import org.apache.ibatis.annotations.*;
 
+import java.util.Collection;
+
 @Mapper
 public interface NovelBookmarkMapper {
     @Select("SELECT * FROM sys_novel_bookmark WHERE user_id = #{userId} AND novel_id = #{novelId}")
@@ -14,4 +16,14 @@ public interface NovelBookmarkMapper {
 
     @Update("UPDATE sys_novel_bookmark SET byte_offset = #{byteOffset}, update_time = #{updateTime} WHERE id = #{id}")
     void update(SysNovelBookmark bookmark);
+
+    // 批量写入书签，已存在 (uk_read) 时更新位置
+    @Insert("<script>" +
+            "INSERT INTO sys_novel_bookmark (user_id, novel_id, byte_offset, update_time) VALUES " +
+            "<foreach item='b' collection='bookmarks' separator=','>" +
+            "(#{b.userId}, #{b.novelId}, #{b.byteOffset}, #{b.updateTime})" +
+            "</foreach>" +
+            " ON DUPLICATE KEY UPDATE byte_offset = VALUES(byte_offset), update_time = VALUES(update_time)" +
+            "</script>")
+    int upsertBatch(@Param("bookmarks") Collection<SysNovelBookmark> bookmarks);
 }
\ No newline at end of file
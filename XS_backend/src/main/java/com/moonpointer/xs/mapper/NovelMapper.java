@@ -12,10 +12,14 @@ public interface NovelMapper {
     @Select("SELECT * FROM sys_novel WHERE id = #{id}")
     SysNovel selectById(Long id);
 
-    @Insert("INSERT INTO sys_novel (title, file_name, original_name, file_size, uploader_id, is_deleted, create_time) VALUES (#{title}, #{fileName}, #{originalName}, #{fileSize}, #{uploaderId}, #{isDeleted}, #{createTime})")
+    // 引用该文件的记录数 (含已删除的记录)，为 0 时才能删除磁盘文件
+    @Select("SELECT COUNT(*) FROM sys_novel WHERE file_name = #{fileName}")
+    int countByFileName(String fileName);
+
+    @Insert("INSERT INTO sys_novel (title, file_name, original_name, file_size, encoding, uploader_id, is_deleted, create_time) VALUES (#{title}, #{fileName}, #{originalName}, #{fileSize}, #{encoding}, #{uploaderId}, #{isDeleted}, #{createTime})")
     @Options(useGeneratedKeys = true, keyProperty = "id")
     void insert(SysNovel novel);
 
-    @Update("UPDATE sys_novel SET title=#{title}, file_name=#{fileName}, original_name=#{originalName}, file_size=#{fileSize}, uploader_id=#{uploaderId}, is_deleted=#{isDeleted}, create_time=#{createTime} WHERE id=#{id}")
+    @Update("UPDATE sys_novel SET title=#{title}, file_name=#{fileName}, original_name=#{originalName}, file_size=#{fileSize}, encoding=#{encoding}, uploader_id=#{uploaderId}, is_deleted=#{isDeleted}, create_time=#{createTime} WHERE id=#{id}")
     void update(SysNovel novel);
 }
\ No newline at end of file
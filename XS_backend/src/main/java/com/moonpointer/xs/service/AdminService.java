@@ -1,35 +1,46 @@
 package com.moonpointer.xs.service;
 import cn.hutool.core.io.FileUtil;
-import cn.hutool.core.util.IdUtil;
 import com.moonpointer.xs.common.PageResult;
 import com.moonpointer.xs.common.Result;
-import com.moonpointer.xs.common.UserContext;
+import com.moonpointer.xs.component.ChatMessageWriter;
+import com.moonpointer.xs.component.ChatRecentCache;
+import com.moonpointer.xs.component.NovelPageCache;
+import com.moonpointer.xs.component.NovelPinnedCache;
+import com.moonpointer.xs.component.NovelPrefetcher;
+import com.moonpointer.xs.component.NovelStorage;
+import com.moonpointer.xs.component.ReadingAnalytics;
+import com.moonpointer.xs.component.UserMessageRelay;
+import com.moonpointer.xs.dto.NovelDTO;
 import com.moonpointer.xs.entity.SysNovel;
 import com.moonpointer.xs.entity.SysUser;
-import com.moonpointer.xs.mapper.NovelMapper;
 import com.moonpointer.xs.mapper.UserMapper;
 import lombok.RequiredArgsConstructor;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
-import java.io.IOException;
-import java.time.LocalDateTime;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
 public class AdminService {
 
     private final UserMapper userMapper;
-    private final NovelMapper novelMapper;
     private final StringRedisTemplate redisTemplate;
-
-    @Value("${app.novel-path}")
-    private String novelBasePath;
+    private final NovelPageCache pageCache;
+    private final NovelPrefetcher prefetcher;
+    private final NovelPinnedCache pinnedCache;
+    private final NovelStorage storage;
+    private final NovelService novelService;
+    private final NovelIngestService ingestService;
+    private final NovelUploadService uploadService;
+    private final ReadingAnalytics analytics;
+    private final ChatMessageWriter chatMessageWriter;
+    private final ChatRecentCache chatRecentCache;
+    private final UserMessageRelay messageRelay;
 
     // 1. 获取用户列表
     public Result<PageResult<SysUser>> getUserList(int page, int size) {
@@ -55,46 +66,102 @@ public class AdminService {
         return Result.success(status == 1 ? "用户已解封" : "用户已封禁并强制下线");
     }
 
-    // 3. 上传小说
-    @Transactional
+    // 3. 上传小说：转存后交给导入流水线，立即返回任务 ID
     public Result<String> uploadNovel(MultipartFile file, String title) {
         if (file.isEmpty()) return Result.error(400, "文件为空");
 
-        // 确保目录存在
-        if (!FileUtil.exist(novelBasePath)) {
-            FileUtil.mkdir(novelBasePath);
-        }
-
-        // 生成唯一文件名，防止重名覆盖
         String originalFilename = file.getOriginalFilename();
         String suffix = FileUtil.getSuffix(originalFilename); // 获取 .txt
         if (!"txt".equalsIgnoreCase(suffix)) {
             return Result.error(400, "只支持 TXT 格式");
         }
+        return ingestService.submit(file, title, null);
+    }
+
+    // 4. 替换小说文件 (修订版本)，同样走导入流水线，发布时旧文件不再被引用才删除
+    public Result<String> replaceNovelFile(Long novelId, MultipartFile file) {
+        if (file.isEmpty()) return Result.error(400, "文件为空");
+        if (!"txt".equalsIgnoreCase(FileUtil.getSuffix(file.getOriginalFilename()))) {
+            return Result.error(400, "只支持 TXT 格式");
+        }
+        if (novelService.getNovel(novelId) == null) return Result.error(404, "小说不存在");
+        return ingestService.submit(file, null, novelId);
+    }
+
+    // 分片上传：建立会话 (novelId 不为空时为替换文件)
+    public Result<NovelDTO.UploadSession> initUpload(NovelDTO.UploadInitReq req) {
+        if (req.getNovelId() != null && novelService.getNovel(req.getNovelId()) == null) {
+            return Result.error(404, "小说不存在");
+        }
+        return uploadService.init(req);
+    }
+
+    // 分片上传：查询缺失的分片，用于断线续传
+    public Result<NovelDTO.UploadSession> getUpload(String uploadId) {
+        return uploadService.status(uploadId);
+    }
+
+    // 分片上传：写入一个分片 (请求体即分片内容)
+    public Result<String> putUploadChunk(String uploadId, int index, String sha256, InputStream body) {
+        return uploadService.putChunk(uploadId, index, sha256, body);
+    }
 
-        String storageName = IdUtil.fastSimpleUUID() + ".txt";
-        File dest = new File(novelBasePath + storageName);
-
-        try {
-            // 保存文件到磁盘
-            file.transferTo(dest);
-
-            // 保存记录到数据库
-            SysNovel novel = new SysNovel();
-            novel.setTitle(title != null ? title : FileUtil.mainName(originalFilename));
-            novel.setFileName(storageName); // 存磁盘上的名字
-            novel.setOriginalName(originalFilename);
-            novel.setFileSize(dest.length()); // 字节大小
-            novel.setUploaderId(UserContext.getUserId());
-            novel.setIsDeleted(0);
-            novel.setCreateTime(LocalDateTime.now());
-
-            novelMapper.insert(novel);
-
-            return Result.success("上传成功");
-        } catch (IOException e) {
-            e.printStackTrace();
-            return Result.error(500, "上传失败: " + e.getMessage());
+    // 分片上传：全部分片到齐后提交导入，返回导入任务 ID
+    public Result<String> commitUpload(String uploadId) {
+        return uploadService.commit(uploadId);
+    }
+
+    public Result<String> abortUpload(String uploadId) {
+        return uploadService.abort(uploadId);
+    }
+
+    // 导入任务进度
+    public Result<NovelDTO.IngestJob> getIngestJob(String jobId) {
+        return ingestService.getJob(jobId);
+    }
+
+    // 阅读统计：按阅读页数排序，用于决定哪些书常驻缓存
+    public Result<List<NovelDTO.ReadStats>> getReadingStats(Integer limit) {
+        int n = limit == null || limit <= 0 ? 20 : Math.min(limit, 200);
+        List<NovelDTO.ReadStats> list = new ArrayList<>();
+        for (ReadingAnalytics.NovelStats stats : analytics.top(n)) {
+            NovelDTO.ReadStats item = new NovelDTO.ReadStats();
+            item.setNovelId(stats.novelId());
+            SysNovel novel = novelService.getNovel(stats.novelId());
+            item.setTitle(novel != null ? novel.getTitle() : null);
+            item.setReads(stats.reads());
+            item.setUniqueReaders(stats.uniqueReaders());
+            item.setHeatmap(stats.heatmap());
+            list.add(item);
         }
+        return Result.success(list);
+    }
+
+    // 5. 分页缓存统计 (含预读命中率，用于调整预读页数)
+    public Result<Map<String, Object>> getPageCacheStats() {
+        Map<String, Object> stats = pageCache.stats();
+        stats.put("prefetch", prefetcher.stats());
+        stats.put("pinned", pinnedCache.stats());
+        return Result.success(stats);
+    }
+
+    // 6. 小说存储各目录的容量与可用空间
+    public Result<List<NovelStorage.Volume>> getStorageVolumes() {
+        return Result.success(storage.volumes());
+    }
+
+    // 7. 聊天消息入库队列统计 (积压、批大小、同步回退次数)
+    public Result<Map<String, Object>> getChatPersistStats() {
+        return Result.success(chatMessageWriter.stats());
+    }
+
+    // 8. 会话最近消息缓存统计
+    public Result<Map<String, Object>> getChatCacheStats() {
+        return Result.success(chatRecentCache.stats());
+    }
+
+    // 9. 本节点 WebSocket 推送中继统计 (本地投递、转发、收到的转发)
+    public Result<Map<String, Object>> getRelayStats() {
+        return Result.success(messageRelay.stats());
     }
-}
\ No newline at end of file
+}
@@ -2,13 +2,17 @@ package com.moonpointer.xs.service;
 
 import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.util.IdUtil;
-import com.github.pagehelper.PageHelper;
-import com.github.pagehelper.PageInfo;
 import com.moonpointer.xs.common.Result;
 import com.moonpointer.xs.common.UserContext;
+import com.moonpointer.xs.component.ChatConversationIndex;
+import com.moonpointer.xs.component.ChatMessageWriter;
+import com.moonpointer.xs.component.ChatMsgIdGenerator;
+import com.moonpointer.xs.component.ChatRecentCache;
+import com.moonpointer.xs.component.UserMessageRelay;
 import com.moonpointer.xs.entity.SysChatMsg;
 import com.moonpointer.xs.entity.SysFriend;
 import com.moonpointer.xs.entity.SysUser;
+import com.moonpointer.xs.entity.VO.ConversationVO;
 import com.moonpointer.xs.entity.VO.FriendVO;
 import com.moonpointer.xs.mapper.ChatMsgMapper;
 import com.moonpointer.xs.mapper.FriendMapper;
@@ -17,7 +21,6 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
@@ -32,13 +35,17 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class ChatService {
 
+    private static final int MAX_HISTORY_PAGE_SIZE = 100;
+
     private final FriendMapper friendMapper;
     private final ChatMsgMapper chatMsgMapper;
     private final UserMapper userMapper;
     private final StringRedisTemplate redisTemplate;
-    // 注入 template
-    @Autowired
-    private SimpMessagingTemplate simpMessagingTemplate;
+    private final ChatMessageWriter chatMessageWriter;
+    private final ChatRecentCache recentCache;
+    private final ChatConversationIndex conversationIndex;
+    private final UserMessageRelay messageRelay;
+    private final ChatMsgIdGenerator idGenerator;
 
     @Value("${app.upload-path:./chat/}")
     private String uploadPath;
@@ -166,31 +173,65 @@ public class ChatService {
     }
 
 
-    // 2.1 获取聊天记录 (分页)
-    public Result<Map<String, Object>> getChatHistory(Long friendId, Integer page, Integer size) {
+    // 2.1 获取聊天记录 (游标分页)
+    // 按主键倒序取 beforeId 之前的 size 条，不统计总数；nextBeforeId 作为下一页的游标
+    public Result<Map<String, Object>> getChatHistory(Long friendId, Long beforeId, Integer size) {
         Long currentUserId = UserContext.getUserId();
+        int limit = Math.max(1, Math.min(size, MAX_HISTORY_PAGE_SIZE));
 
-        // 使用 PageHelper 自动处理分页 SQL
-        PageHelper.startPage(page, size);
+        String conversationId = SysChatMsg.conversationOf(currentUserId, friendId);
 
-        // 调用 ChatMsgMapper 查询双向历史
-        List<SysChatMsg> list = chatMsgMapper.selectHistory(currentUserId, friendId);
-
-        PageInfo<SysChatMsg> pageInfo = new PageInfo<>(list);
+        // 多取一条用来判断是否还有更早的记录；先取最近消息缓存，超出缓存窗口的部分再查库
+        List<SysChatMsg> list = recentCache.recent(conversationId, beforeId, limit + 1);
+        if (list.size() <= limit) {
+            Long dbBeforeId = list.isEmpty() ? beforeId : list.get(list.size() - 1).getId();
+            list.addAll(chatMsgMapper.selectHistoryBefore(conversationId, dbBeforeId, limit + 1 - list.size()));
+        }
+        boolean hasMore = list.size() > limit;
+        if (hasMore) list = list.subList(0, limit);
 
         Map<String, Object> data = new HashMap<>();
-        data.put("total", pageInfo.getTotal());
-        data.put("current", pageInfo.getPageNum());
-        data.put("records", pageInfo.getList());
+        data.put("records", list);
+        data.put("hasMore", hasMore);
+        data.put("nextBeforeId", hasMore ? list.get(list.size() - 1).getId() : null);
 
         return Result.success(data);
     }
 
+    // 2.1.1 会话列表：每个会话的最后一条消息与未读数 (Redis 增量维护，一次调用返回)
+    public Result<List<ConversationVO>> getConversations() {
+        Long currentUserId = UserContext.getUserId();
+        List<ConversationVO> conversations = conversationIndex.list(currentUserId);
+        if (conversations.isEmpty()) return Result.success(conversations);
+
+        List<Long> peerIds = conversations.stream().map(ConversationVO::getPeerId).collect(Collectors.toList());
+        Map<Long, SysUser> users = userMapper.selectByIds(peerIds).stream()
+                .collect(Collectors.toMap(SysUser::getId, u -> u));
+        Set<String> onlineIds = stringRedisTemplate.opsForSet().members("app:online_users");
+        Set<String> safeOnlineIds = (onlineIds != null) ? onlineIds : Collections.emptySet();
+
+        for (ConversationVO vo : conversations) {
+            SysUser peer = users.get(vo.getPeerId());
+            if (peer != null) {
+                vo.setNickname(peer.getNickname());
+                vo.setAvatar(peer.getAvatar());
+            }
+            vo.setOnline(safeOnlineIds.contains(String.valueOf(vo.getPeerId())));
+        }
+        return Result.success(conversations);
+    }
+
     // 2.2 标记消息已读
     @Transactional(rollbackFor = Exception.class)
     public Result<String> readMessages(Long friendId) {
         Long currentUserId = UserContext.getUserId();
+        // 先清会话未读数：与并发到达的新消息交错时宁可多计一条，不会把未读的清掉
+        conversationIndex.onRead(currentUserId, friendId);
+        // 还在入库队列里的消息先标记，否则稍后会以未读状态写入
+        chatMessageWriter.markRead(friendId, currentUserId);
         chatMsgMapper.updateReadStatus(friendId, currentUserId);
+        // 缓存里的消息不逐条改写，记录“已读到此 ID 为止”
+        recentCache.markRead(SysChatMsg.conversationOf(currentUserId, friendId), currentUserId, idGenerator.nextId());
 
 
         // 这里构造一个特殊消息，比如 type=99 代表已读回执
@@ -199,8 +240,8 @@ public class ChatService {
         receipt.put("type", 99); // 系统消息类型
         receipt.put("content", "READ");
 
-        // 推送到 friendId 的订阅队列
-        simpMessagingTemplate.convertAndSendToUser(
+        // 推送到 friendId 的订阅队列 (对方可能连在其他节点)
+        messageRelay.sendToUser(
                 friendId.toString(),
                 "/queue/chat",
                 receipt
@@ -279,8 +320,11 @@ public class ChatService {
     }
 
     // 2.5 异步保存聊天记录 (被 WebSocket 模块调用)
+    // 返回时消息已分配 ID 并写入预写日志，入库由 ChatMessageWriter 批量完成
     public void saveMessageAsync(SysChatMsg msg) {
-        chatMsgMapper.insert(msg);
+        chatMessageWriter.submit(msg);
+        recentCache.append(msg);
+        conversationIndex.onMessage(msg);
     }
 
     // === 新增方法：获取好友申请列表 ===
@@ -0,0 +1,168 @@
+package com.moonpointer.xs.service;
+
+import com.moonpointer.xs.common.Result;
+import com.moonpointer.xs.component.NovelFileRegistry;
+import com.moonpointer.xs.dto.NovelDTO;
+import com.moonpointer.xs.entity.SysNovel;
+import com.moonpointer.xs.utils.HorspoolMatcher;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.util.concurrent.*;
+
+/**
+ * 书内“查找下一个”
+ * 从 from 开始按大块顺序读取原文，用字节级 Boyer-Moore-Horspool 在 UTF-8 上匹配，
+ * 返回的偏移可直接作为 readContent 的 start
+ * 查找在有界线程池中执行并受时间预算限制：超时即停止，返回已扫描到的位置，客户端可从那里继续
+ * 取消只设置标志位而不中断线程：中断会关闭句柄注册表里共享的 FileChannel
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class NovelFindService {
+
+    private static final int MAX_QUERY_CHARS = 100;
+
+    private final NovelService novelService;
+    private final NovelFileRegistry fileRegistry;
+
+    // 单次查找的时间预算
+    @Value("${app.novel-find.budget-millis:500}")
+    private long budgetMillis;
+
+    // 每次读取的块大小
+    @Value("${app.novel-find.chunk-size:1048576}")
+    private int chunkSize;
+
+    @Value("${app.novel-find.workers:2}")
+    private int workers;
+
+    @Value("${app.novel-find.queue-capacity:16}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor findExecutor;
+    // 工作线程各自复用一块读缓冲
+    private ThreadLocal<byte[]> chunks;
+
+    @PostConstruct
+    public void init() {
+        findExecutor = new ThreadPoolExecutor(
+                workers, workers, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Executors.defaultThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        chunks = ThreadLocal.withInitial(() -> new byte[Math.max(chunkSize, 64 * 1024)]);
+    }
+
+    public Result<NovelDTO.FindRes> findNext(Long novelId, Long from, String query) {
+        if (!StringUtils.hasLength(query)) return Result.error(400, "查找内容不能为空");
+        if (query.length() > MAX_QUERY_CHARS) return Result.error(400, "查找内容过长");
+        SysNovel novel = novelService.getNovel(novelId);
+        if (novel == null) return Result.error(404, "小说不存在");
+
+        HorspoolMatcher matcher = new HorspoolMatcher(query.getBytes(StandardCharsets.UTF_8), true);
+        long start = from == null || from < 0 ? 0 : from;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        Scan scan = new Scan(novel.getFileName(), matcher, start, deadline);
+
+        Future<NovelDTO.FindRes> future;
+        try {
+            future = findExecutor.submit(scan::run);
+        } catch (RejectedExecutionException e) {
+            return Result.error(429, "查找请求过多，请稍后再试");
+        }
+        try {
+            // 扫描线程自己会在预算用完时停下，这里多等一点只为兜底
+            return Result.success(future.get(budgetMillis + 200, TimeUnit.MILLISECONDS));
+        } catch (TimeoutException e) {
+            scan.cancel();
+            future.cancel(false);
+            return Result.success(scan.timedOut());
+        } catch (InterruptedException e) {
+            scan.cancel();
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            return Result.error(503, "查找已取消");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof NoSuchFileException) return Result.error(500, "文件丢失");
+            log.error("书内查找失败: 小说 {}", novelId, e.getCause());
+            return Result.error(500, "读取文件失败");
+        }
+    }
+
+    /**
+     * 一次查找：checked 之前开始的匹配都已排除，超时后从这里继续不会漏掉
+     */
+    private final class Scan {
+        final String fileName;
+        final HorspoolMatcher matcher;
+        final long deadline;
+        volatile long checked;
+        volatile boolean cancelled;
+
+        Scan(String fileName, HorspoolMatcher matcher, long from, long deadline) {
+            this.fileName = fileName;
+            this.matcher = matcher;
+            this.checked = from;
+            this.deadline = deadline;
+        }
+
+        NovelDTO.FindRes run() throws IOException {
+            byte[] chunk = chunks.get();
+            int overlap = matcher.length() - 1;
+            long base = checked;
+            int carry = 0;
+            while (true) {
+                if (cancelled || System.nanoTime() > deadline) {
+                    return timedOut();
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(chunk, carry, chunk.length - carry);
+                int n = fileRegistry.read(fileName, base + carry, buffer);
+                int valid = carry + Math.max(n, 0);
+
+                int idx = matcher.indexOf(chunk, 0, valid);
+                if (idx >= 0) return result(base + idx, null, false);
+                if (n <= 0) return result(null, null, false);
+
+                // 末尾不足一个模式长度的字节留到下一块，跨块的匹配不会漏掉
+                int keep = Math.min(overlap, valid);
+                System.arraycopy(chunk, valid - keep, chunk, 0, keep);
+                base += valid - keep;
+                carry = keep;
+                checked = base;
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        NovelDTO.FindRes timedOut() {
+            return result(null, checked, true);
+        }
+
+        private NovelDTO.FindRes result(Long offset, Long resumeFrom, boolean timedOut) {
+            NovelDTO.FindRes res = new NovelDTO.FindRes();
+            res.setOffset(offset);
+            res.setResumeFrom(resumeFrom);
+            res.setTimedOut(timedOut);
+            return res;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        findExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,452 @@
+package com.moonpointer.xs.service;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.IdUtil;
+import com.moonpointer.xs.common.Result;
+import com.moonpointer.xs.common.UserContext;
+import com.moonpointer.xs.component.NovelCatalog;
+import com.moonpointer.xs.component.NovelChapterIndex;
+import com.moonpointer.xs.component.NovelCheckpointIndex;
+import com.moonpointer.xs.component.NovelEncodingNormalizer;
+import com.moonpointer.xs.component.NovelFileRegistry;
+import com.moonpointer.xs.component.NovelSearchIndex;
+import com.moonpointer.xs.component.NovelStorage;
+import com.moonpointer.xs.dto.NovelDTO;
+import com.moonpointer.xs.entity.SysNovel;
+import com.moonpointer.xs.mapper.NovelMapper;
+import com.moonpointer.xs.utils.NovelBlockFormat;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 小说导入流水线
+ * 请求线程只把上传内容落到暂存文件并返回任务 ID，其余阶段在有界线程池中执行：
+ * 编码识别 (同时计算内容摘要) -> 生成索引 -> 预热缓存 -> 发布 (写库、刷新目录)
+ * 排队和执行中的任务总数有上限，满了直接拒绝，突发上传不会占满请求线程和磁盘
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class NovelIngestService {
+
+    public enum Stage {
+        STORE, ENCODE, INDEX, WARM, PUBLISH
+    }
+
+    // 已结束的任务保留多久供查询
+    private static final long JOB_RETENTION_MILLIS = 60 * 60 * 1000L;
+    // 预热的页数
+    private static final int WARM_PAGES = 3;
+
+    private final NovelMapper novelMapper;
+    private final NovelStorage storage;
+    private final NovelFileRegistry fileRegistry;
+    private final NovelService novelService;
+    private final NovelEncodingNormalizer encodingNormalizer;
+    private final NovelChapterIndex chapterIndex;
+    private final NovelCheckpointIndex checkpointIndex;
+    private final NovelSearchIndex searchIndex;
+    private final NovelCatalog catalog;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.novel-storage.compress-on-upload:false}")
+    private boolean compressOnUpload;
+
+    @Value("${app.novel-storage.block-size:65536}")
+    private int compressBlockSize;
+
+    @Value("${app.novel-ingest.workers:2}")
+    private int workers;
+
+    @Value("${app.novel-ingest.queue-capacity:8}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor ingestExecutor;
+    // 排队 + 执行中的任务名额
+    private Semaphore slots;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    // 保存新文件与删除无引用文件互斥；pendingFiles 记录已复用但还未写库提交的文件，不能删除
+    // 任务在发布事务提交之后才解除 pendingFiles，期间其他任务的 countByFileName 读不到未提交的记录也不会误删
+    private final Object storageLock = new Object();
+    private final Map<String, Integer> pendingFiles = new HashMap<>();
+
+    @PostConstruct
+    public void init() {
+        ingestExecutor = new ThreadPoolExecutor(
+                workers, workers, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Executors.defaultThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        slots = new Semaphore(workers + queueCapacity);
+    }
+
+    /**
+     * 导入前把上传内容写进一个草稿，由流水线接管 (提交为暂存文件)
+     */
+    @FunctionalInterface
+    public interface Stager {
+        NovelStorage.Draft stage() throws IOException;
+    }
+
+    /**
+     * 提交导入任务，replaceNovelId 不为空时替换该小说的文件
+     * @return 任务 ID
+     */
+    public Result<String> submit(MultipartFile file, String title, Long replaceNovelId) {
+        // 请求结束后 multipart 临时文件会被清理，先转存到自己的暂存文件
+        return submit(file.getOriginalFilename(), title, replaceNovelId, () -> {
+            NovelStorage.Draft draft = storage.create();
+            try (InputStream in = file.getInputStream(); OutputStream out = draft.out()) {
+                in.transferTo(out);
+            } catch (IOException e) {
+                draft.close();
+                throw e;
+            }
+            return draft;
+        });
+    }
+
+    /**
+     * 同上，内容由 stager 提供 (如分片上传合并好的草稿)
+     * 拿到排队名额后才调用 stager，返回 429 时草稿原样保留，调用方可以稍后重试
+     */
+    public Result<String> submit(String originalName, String title, Long replaceNovelId, Stager stager) {
+        if (!slots.tryAcquire()) return Result.error(429, "导入任务过多，请稍后再试");
+
+        Job job = new Job(IdUtil.fastSimpleUUID(), replaceNovelId);
+        String staging = ".ingest-" + job.id + ".tmp";
+        boolean submitted = false;
+        try {
+            job.begin(Stage.STORE);
+            try (NovelStorage.Draft draft = stager.stage()) {
+                draft.commit(staging, true);
+            }
+            job.end(Stage.STORE);
+
+            String novelTitle = title != null ? title : FileUtil.mainName(originalName);
+            Long uploaderId = UserContext.getUserId();
+            jobs.put(job.id, job);
+            ingestExecutor.execute(() -> run(job, staging, originalName, novelTitle, uploaderId));
+            submitted = true;
+            return Result.success(job.id);
+        } catch (RejectedExecutionException e) {
+            // 名额已拿到仍被拒绝，只会发生在线程池关闭时
+            return Result.error(503, "服务正在关闭");
+        } catch (IOException e) {
+            log.error("保存上传文件失败", e);
+            return Result.error(500, "上传失败: " + e.getMessage());
+        } finally {
+            if (!submitted) {
+                jobs.remove(job.id);
+                deleteQuietly(staging);
+                slots.release();
+            }
+        }
+    }
+
+    public Result<NovelDTO.IngestJob> getJob(String jobId) {
+        Job job = jobs.get(jobId);
+        if (job == null) return Result.error(404, "任务不存在或已过期");
+        return Result.success(job.toDto());
+    }
+
+    private void run(Job job, String staging, String originalName, String title, Long uploaderId) {
+        SysNovel novel = new SysNovel();
+        boolean created = false;
+        Exception failure = null;
+        try {
+            job.begin(Stage.ENCODE);
+            created = store(staging, novel);
+            job.end(Stage.ENCODE);
+
+            job.begin(Stage.INDEX);
+            if (created) {
+                buildIndexes(novel.getFileName());
+                // 可选：转为分块压缩格式，读取时由 NovelFileRegistry 透明解压
+                if (compressOnUpload) {
+                    compress(novel.getFileName());
+                }
+            }
+            job.end(Stage.INDEX);
+
+            job.begin(Stage.WARM);
+            novelService.warmUp(novel.getFileName(), WARM_PAGES);
+            job.end(Stage.WARM);
+
+            job.begin(Stage.PUBLISH);
+            novel.setOriginalName(originalName);
+            // 写库在一个事务里完成，提交之后才解除 pendingFiles、删除被替换的旧文件
+            Long novelId = transactionTemplate.execute(status -> job.replaceNovelId == null
+                    ? publishNew(novel, title, uploaderId)
+                    : publishReplacement(job.replaceNovelId, novel));
+            job.end(Stage.PUBLISH);
+            job.succeed(novelId);
+            log.info("小说导入完成: 任务 {} -> 小说 {} ({}, 原编码 {})", job.id, novelId, novel.getFileName(), novel.getEncoding());
+        } catch (Exception e) {
+            log.error("小说导入失败: 任务 {}", job.id, e);
+            failure = e;
+        } finally {
+            if (novel.getFileName() != null) {
+                unpin(novel.getFileName());
+                // 本任务新建的文件没有记录引用 (发布失败已回滚)，连同已生成的索引文件一起删除
+                if (failure != null && created) {
+                    try {
+                        deleteIfUnreferenced(novel.getFileName());
+                    } catch (Exception e) {
+                        log.warn("清理导入失败的文件出错: {}", novel.getFileName(), e);
+                    }
+                }
+            }
+            deleteQuietly(staging);
+            slots.release();
+            // 清理完成后再标记失败，查询到失败状态时文件已经删除
+            if (failure != null) job.fail(failure);
+        }
+    }
+
+    /**
+     * 按内容保存：识别编码并一次性转为 UTF-8，写入的同时计算 SHA-256，以摘要作为文件名
+     * 结果写回 novel 的 fileName / fileSize / encoding
+     * @return 是否新建了文件 (内容已存在时复用已有文件和索引)
+     */
+    private boolean store(String staging, SysNovel novel) throws IOException {
+        MessageDigest digest = sha256();
+        try (NovelStorage.Draft draft = storage.create()) {
+            try (InputStream in = Channels.newInputStream(storage.openRead(staging))) {
+                novel.setEncoding(encodingNormalizer.normalize(in, draft.out(), digest));
+            }
+            long textLength = draft.size();
+            String storageName = HexFormat.of().formatHex(digest.digest()) + ".txt";
+
+            boolean created;
+            synchronized (storageLock) {
+                created = draft.commit(storageName, false);
+                if (!created) {
+                    log.info("小说内容已存在，复用文件: {}", storageName);
+                }
+                pendingFiles.merge(storageName, 1, Integer::sum);
+            }
+
+            novel.setFileName(storageName); // 存储中的名字 (内容摘要)
+            novel.setFileSize(textLength); // 字节大小 (UTF-8 原文)
+            return created;
+        }
+    }
+
+    // 转为分块压缩格式后原地替换；生成索引时已按原文打开过句柄，替换后要重新识别格式和长度
+    private void compress(String fileName) throws IOException {
+        try (NovelStorage.Draft draft = storage.create(fileName)) {
+            try (FileChannel in = storage.openRead(fileName)) {
+                NovelBlockFormat.compress(in, draft.channel(), compressBlockSize);
+            }
+            draft.commit(fileName, true);
+        }
+        fileRegistry.invalidate(fileName);
+    }
+
+    private void buildIndexes(String storageName) {
+        // 扫描章节，生成偏移索引 (失败不影响上传，阅读时会重新构建)
+        try {
+            chapterIndex.build(storageName);
+        } catch (IOException e) {
+            log.warn("章节索引生成失败: {}", storageName, e);
+        }
+
+        // 生成字符/行号检查点 (失败时首次阅读会现场构建)
+        try {
+            checkpointIndex.build(storageName);
+        } catch (IOException e) {
+            log.warn("字符检查点生成失败: {}", storageName, e);
+        }
+
+        // 生成全文索引段 (失败时首次检索会在后台补建)
+        try {
+            searchIndex.build(storageName);
+        } catch (IOException e) {
+            log.warn("全文索引生成失败: {}", storageName, e);
+        }
+    }
+
+    private Long publishNew(SysNovel novel, String title, Long uploaderId) {
+        novel.setTitle(title);
+        novel.setUploaderId(uploaderId);
+        novel.setIsDeleted(0);
+        novel.setCreateTime(LocalDateTime.now());
+        novelMapper.insert(novel);
+        catalog.invalidate();
+        return novel.getId();
+    }
+
+    private Long publishReplacement(Long novelId, SysNovel stored) {
+        SysNovel updated = novelMapper.selectById(novelId);
+        if (updated == null) throw new IllegalStateException("小说不存在: " + novelId);
+        String oldFileName = updated.getFileName();
+
+        updated.setFileName(stored.getFileName());
+        updated.setFileSize(stored.getFileSize());
+        updated.setEncoding(stored.getEncoding());
+        updated.setOriginalName(stored.getOriginalName());
+        novelMapper.update(updated);
+        catalog.invalidate();
+        // 提交后先清掉缓存的旧记录，再删除旧文件
+        novelService.evictNovel(novelId);
+
+        // 旧文件可能还被内容相同的其他记录引用
+        if (!oldFileName.equals(stored.getFileName())) {
+            releaseNovelFile(oldFileName);
+        }
+        return novelId;
+    }
+
+    /**
+     * 释放一次文件引用：没有记录、也没有进行中的任务再引用该文件时，删除文件及其索引文件
+     * 在事务中调用时等提交后再判断和删除，回滚时文件仍被原记录引用，不能删
+     */
+    private void releaseNovelFile(String fileName) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    deleteIfUnreferenced(fileName);
+                }
+            });
+        } else {
+            deleteIfUnreferenced(fileName);
+        }
+    }
+
+    private void deleteIfUnreferenced(String fileName) {
+        synchronized (storageLock) {
+            if (pendingFiles.containsKey(fileName) || novelMapper.countByFileName(fileName) > 0) return;
+            novelService.evictFile(fileName);
+            deleteQuietly(fileName);
+            deleteQuietly(chapterIndex.sidecarName(fileName));
+            deleteQuietly(searchIndex.sidecarName(fileName));
+            deleteQuietly(checkpointIndex.sidecarName(fileName));
+        }
+    }
+
+    private void deleteQuietly(String name) {
+        try {
+            storage.delete(name);
+        } catch (IOException e) {
+            log.warn("删除小说文件失败: {}", name, e);
+        }
+    }
+
+    private void unpin(String fileName) {
+        synchronized (storageLock) {
+            pendingFiles.computeIfPresent(fileName, (k, n) -> n > 1 ? n - 1 : null);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // 定时清理已结束的过期任务
+    @Scheduled(fixedDelay = 600_000)
+    public void purgeFinishedJobs() {
+        long deadline = System.currentTimeMillis() - JOB_RETENTION_MILLIS;
+        jobs.values().removeIf(job -> job.finishedAt > 0 && job.finishedAt < deadline);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ingestExecutor.shutdownNow();
+    }
+
+    /**
+     * 导入任务的进度，各阶段记录耗时
+     */
+    private static final class Job {
+        final String id;
+        final Long replaceNovelId;
+        final LocalDateTime createTime = LocalDateTime.now();
+        final long[] startedAt = new long[Stage.values().length];
+        final long[] elapsed = new long[Stage.values().length];
+
+        String status = "QUEUED";
+        Stage stage;
+        Long novelId;
+        String error;
+        volatile long finishedAt;
+
+        Job(String id, Long replaceNovelId) {
+            this.id = id;
+            this.replaceNovelId = replaceNovelId;
+            Arrays.fill(elapsed, -1);
+        }
+
+        synchronized void begin(Stage s) {
+            stage = s;
+            startedAt[s.ordinal()] = System.nanoTime();
+            // 暂存在请求线程中完成，之后进入队列等待
+            if (s != Stage.STORE) status = "RUNNING";
+        }
+
+        synchronized void end(Stage s) {
+            elapsed[s.ordinal()] = (System.nanoTime() - startedAt[s.ordinal()]) / 1_000_000;
+        }
+
+        synchronized void succeed(Long novelId) {
+            this.novelId = novelId;
+            status = "SUCCEEDED";
+            finishedAt = System.currentTimeMillis();
+        }
+
+        synchronized void fail(Exception e) {
+            error = e.getMessage();
+            status = "FAILED";
+            finishedAt = System.currentTimeMillis();
+        }
+
+        synchronized NovelDTO.IngestJob toDto() {
+            NovelDTO.IngestJob dto = new NovelDTO.IngestJob();
+            dto.setJobId(id);
+            dto.setStatus(status);
+            dto.setStage(stage != null ? stage.name() : null);
+            dto.setNovelId(novelId);
+            dto.setError(error);
+            dto.setCreateTime(createTime);
+            List<NovelDTO.IngestStage> stages = new ArrayList<>(Stage.values().length);
+            for (Stage s : Stage.values()) {
+                String state;
+                if (elapsed[s.ordinal()] >= 0) state = "DONE";
+                else if (s == stage) state = "FAILED".equals(status) ? "FAILED" : "RUNNING";
+                else state = "PENDING";
+                stages.add(new NovelDTO.IngestStage(s.name(), state,
+                        elapsed[s.ordinal()] >= 0 ? elapsed[s.ordinal()] : null));
+            }
+            dto.setStages(stages);
+            return dto;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.moonpointer.xs.service;
+
+import com.moonpointer.xs.common.Result;
+import com.moonpointer.xs.component.NovelCatalog;
+import com.moonpointer.xs.component.NovelFileRegistry;
+import com.moonpointer.xs.component.NovelSearchIndex;
+import com.moonpointer.xs.dto.NovelDTO;
+import com.moonpointer.xs.entity.SysNovel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 小说全文检索
+ * 先查全库词典，只打开包含全部词项的书；再用书的倒排索引求出所有词项都出现过的段，
+ * 读取这些段确认原文确实包含关键词，返回的 byteOffset 指向关键词首字节，可直接作为 readContent 的 start
+ * 书按包含全部词项的段数排序 (来自索引，不受确认条数上限影响)
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class NovelSearchService {
+
+    // 每个候选段读取的窗口 (段长 + 一行的最大切片)
+    private static final int WINDOW_SIZE = 16 * 1024;
+    // 每本书最多确认的候选段数、返回的命中数 (凑够命中数即停止读取)
+    private static final int MAX_VERIFY_PER_NOVEL = 50;
+    private static final int MAX_HITS_PER_NOVEL = 5;
+    private static final int SNIPPET_CHARS = 30;
+
+    private final NovelCatalog catalog;
+    private final NovelFileRegistry fileRegistry;
+    private final NovelSearchIndex searchIndex;
+
+    // 旧书没有索引时在后台补建，不阻塞查询
+    private final ExecutorService indexExecutor = new ThreadPoolExecutor(
+            1, 1, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            Executors.defaultThreadFactory()
+    );
+    private final Set<String> building = ConcurrentHashMap.newKeySet();
+    // 全库词典加载完成前每本书都要检查
+    private volatile boolean dictionaryReady;
+
+    @PostConstruct
+    public void init() {
+        indexExecutor.execute(this::loadDictionary);
+    }
+
+    public Result<List<NovelDTO.SearchHit>> search(String keyword, Integer limit) {
+        if (!StringUtils.hasText(keyword)) return Result.error(400, "关键词不能为空");
+        keyword = keyword.strip();
+        List<String> tokens = NovelSearchIndex.tokenize(keyword);
+        if (tokens.isEmpty()) return Result.error(400, "关键词太短，至少两个汉字");
+        int max = limit == null || limit <= 0 ? 20 : Math.min(limit, 100);
+
+        // 不在词典里的书 (还没有索引) 照旧检查，没有索引时后台补建
+        Set<String> files = dictionaryReady ? searchIndex.filesContaining(tokens) : null;
+        List<NovelHits> ranked = new ArrayList<>();
+        for (SysNovel novel : catalog.current().novels()) {
+            if (files != null && !files.contains(novel.getFileName()) && searchIndex.inDictionary(novel.getFileName())) continue;
+            try {
+                NovelSearchIndex.Segment segment = searchIndex.get(novel.getFileName());
+                if (segment == null) {
+                    scheduleBuild(novel.getFileName());
+                    continue;
+                }
+                long[] candidates = intersect(segment, tokens);
+                if (candidates.length == 0) continue;
+
+                List<NovelDTO.SearchHit> hits = verify(novel, candidates, keyword);
+                if (!hits.isEmpty()) ranked.add(new NovelHits(candidates.length, hits));
+            } catch (IOException e) {
+                log.warn("检索小说 {} 失败: {}", novel.getId(), e.getMessage());
+            }
+        }
+
+        // 包含关键词的段多的书排前面，同一本书内按位置先后
+        ranked.sort(Comparator.comparingInt((NovelHits h) -> h.segments).reversed());
+        List<NovelDTO.SearchHit> result = new ArrayList<>();
+        for (NovelHits hits : ranked) {
+            for (NovelDTO.SearchHit hit : hits.hits) {
+                if (result.size() >= max) return Result.success(result);
+                hit.setScore(hits.segments);
+                result.add(hit);
+            }
+        }
+        return Result.success(result);
+    }
+
+    private record NovelHits(int segments, List<NovelDTO.SearchHit> hits) {
+    }
+
+    // 所有词项倒排表的交集 (均为升序)
+    private long[] intersect(NovelSearchIndex.Segment segment, List<String> tokens) {
+        long[] result = null;
+        for (String token : tokens) {
+            long[] postings = segment.lookup(token);
+            if (postings.length == 0) return postings;
+            if (result == null) {
+                result = postings;
+                continue;
+            }
+            long[] merged = new long[Math.min(result.length, postings.length)];
+            int i = 0, j = 0, k = 0;
+            while (i < result.length && j < postings.length) {
+                if (result[i] == postings[j]) {
+                    merged[k++] = result[i];
+                    i++;
+                    j++;
+                } else if (result[i] < postings[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            result = Arrays.copyOf(merged, k);
+            if (k == 0) return result;
+        }
+        return result;
+    }
+
+    /**
+     * 读取候选段确认关键词出现的确切位置，凑够 MAX_HITS_PER_NOVEL 条即返回
+     */
+    private List<NovelDTO.SearchHit> verify(SysNovel novel, long[] candidates, String keyword) throws IOException {
+        List<NovelDTO.SearchHit> hits = new ArrayList<>();
+        long lastHit = -1;
+        ByteBuffer buffer = fileRegistry.borrowBuffer(WINDOW_SIZE);
+        try {
+            for (int c = 0; c < candidates.length && c < MAX_VERIFY_PER_NOVEL && hits.size() < MAX_HITS_PER_NOVEL; c++) {
+                long windowStart = candidates[c];
+                buffer.clear().limit(WINDOW_SIZE);
+                int n = fileRegistry.read(novel.getFileName(), windowStart, buffer);
+                if (n <= 0) continue;
+
+                String text = new String(buffer.array(), 0, n, StandardCharsets.UTF_8);
+                for (int idx = indexOfIgnoreCase(text, keyword, 0); idx >= 0; idx = indexOfIgnoreCase(text, keyword, idx + 1)) {
+                    long offset = windowStart + text.substring(0, idx).getBytes(StandardCharsets.UTF_8).length;
+                    // 相邻窗口有重叠，跳过已经统计过的位置
+                    if (offset <= lastHit) continue;
+                    lastHit = offset;
+                    NovelDTO.SearchHit hit = new NovelDTO.SearchHit();
+                    hit.setNovelId(novel.getId());
+                    hit.setTitle(novel.getTitle());
+                    hit.setByteOffset(offset);
+                    hit.setSnippet(snippet(text, idx, keyword.length()));
+                    hits.add(hit);
+                    if (hits.size() >= MAX_HITS_PER_NOVEL) break;
+                }
+            }
+        } finally {
+            fileRegistry.returnBuffer(buffer);
+        }
+        return hits;
+    }
+
+    private static int indexOfIgnoreCase(String text, String keyword, int from) {
+        int last = text.length() - keyword.length();
+        for (int i = from; i <= last; i++) {
+            if (text.regionMatches(true, i, keyword, 0, keyword.length())) return i;
+        }
+        return -1;
+    }
+
+    private static String snippet(String text, int idx, int length) {
+        int from = Math.max(0, idx - SNIPPET_CHARS);
+        int to = Math.min(text.length(), idx + length + SNIPPET_CHARS);
+        return text.substring(from, to).replace('\r', ' ').replace('\n', ' ').strip();
+    }
+
+    // 启动时把已有索引段的词项读进全库词典，只读词项不解码倒排表
+    private void loadDictionary() {
+        try {
+            int count = 0;
+            for (SysNovel novel : catalog.current().novels()) {
+                try {
+                    if (searchIndex.loadDictionary(novel.getFileName())) count++;
+                } catch (IOException e) {
+                    log.warn("加载全文索引词项失败: {}", novel.getFileName(), e);
+                }
+            }
+            dictionaryReady = true;
+            log.info("全文检索词典已加载: {} 本", count);
+        } catch (Exception e) {
+            log.warn("全文检索词典加载失败，检索时逐本检查", e);
+        }
+    }
+
+    private void scheduleBuild(String fileName) {
+        if (!building.add(fileName)) return;
+        indexExecutor.execute(() -> {
+            try {
+                searchIndex.build(fileName);
+            } catch (IOException e) {
+                log.warn("全文索引生成失败: {}", fileName, e);
+            } finally {
+                building.remove(fileName);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        indexExecutor.shutdownNow();
+    }
+}
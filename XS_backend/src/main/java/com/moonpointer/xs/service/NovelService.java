@@ -1,23 +1,46 @@
 package com.moonpointer.xs.service;
+import cn.hutool.core.io.FileUtil;
 import com.moonpointer.xs.common.Result;
 import com.moonpointer.xs.common.UserContext;
+import com.moonpointer.xs.component.NovelBookmarkBuffer;
+import com.moonpointer.xs.component.NovelCatalog;
+import com.moonpointer.xs.component.NovelChapterIndex;
+import com.moonpointer.xs.component.NovelCheckpointIndex;
+import com.moonpointer.xs.component.NovelFileRegistry;
+import com.moonpointer.xs.component.NovelPageCache;
+import com.moonpointer.xs.component.NovelPinnedCache;
+import com.moonpointer.xs.component.NovelPrefetcher;
+import com.moonpointer.xs.component.NovelSearchIndex;
+import com.moonpointer.xs.component.NovelStorage;
+import com.moonpointer.xs.component.ReadingAnalytics;
 import com.moonpointer.xs.dto.NovelDTO;
 import com.moonpointer.xs.entity.SysNovel;
 import com.moonpointer.xs.entity.SysNovelBookmark;
 import com.moonpointer.xs.mapper.NovelBookmarkMapper;
 import com.moonpointer.xs.mapper.NovelMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.io.File;
-import java.io.RandomAccessFile;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
-import java.time.LocalDateTime;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Service
@@ -26,122 +49,494 @@ public class NovelService {
 
     private final NovelMapper novelMapper;
     private final NovelBookmarkMapper bookmarkMapper;
+    private final NovelBookmarkBuffer bookmarkBuffer;
     private final StringRedisTemplate redisTemplate;
+    private final NovelStorage storage;
+    private final NovelFileRegistry fileRegistry;
+    private final NovelChapterIndex chapterIndex;
+    private final NovelSearchIndex searchIndex;
+    private final NovelCheckpointIndex checkpointIndex;
+    private final NovelCatalog catalog;
+    private final NovelPageCache pageCache;
+    private final NovelPrefetcher prefetcher;
+    private final ReadingAnalytics analytics;
+    private final NovelPinnedCache pinnedCache;
 
-    @Value("${app.novel-path}")
-    private String novelBasePath;
+    @Value("${app.novel-pin.top-n:10}")
+    private int pinTopN;
 
-    // 1. 获取小说列表 (用户端)
-    public Result<List<SysNovel>> getNovelList() {
-        // 只查询未删除的
-        List<SysNovel> list = novelMapper.selectActiveNovels();
-        return Result.success(list);
+    // Tomcat sendfile 相关的请求属性
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // 默认页大小
+    private static final int DEFAULT_PAGE_SIZE = 2048;
+
+    // 批量阅读的页数和总字节上限
+    private static final int MAX_BATCH_PAGES = 20;
+    private static final int MAX_BATCH_BYTES = 256 * 1024;
+
+    // 按章节阅读时单页最大字节数
+    private static final int MAX_CHAPTER_PAGE_SIZE = 64 * 1024;
+
+    // id -> 小说记录
+    private final Map<Long, SysNovel> novelCache = new ConcurrentHashMap<>();
+
+    // 1. 获取小说列表 (用户端)：未删除的小说，直接用目录快照，只在上传/修改后重建
+    public NovelCatalog.Snapshot getNovelList() {
+        return catalog.current();
     }
 
+    // 2. 阅读内容：先查两级分页缓存，未命中再用共享句柄位置读取
     public Result<NovelDTO.ReadRes> readContent(NovelDTO.ReadReq req) {
-        SysNovel novel = novelMapper.selectById(req.getNovelId());
+        SysNovel novel = getNovel(req.getNovelId());
         if (novel == null) return Result.error(404, "小说不存在");
 
-        String filePath = novelBasePath + novel.getFileName();
-        File file = new File(filePath);
-        if (!file.exists()) return Result.error(500, "文件丢失");
+        long start = req.getStart() != null ? req.getStart() : 0;
+        int size = req.getSize() != null ? req.getSize() : DEFAULT_PAGE_SIZE; // 默认读 2KB
 
-        // 尝试从 Redis 缓存读取 (Key: "novel:content:{id}:{start}")
-        // 实际场景建议缓存文本，这里为了演示 IO 逻辑先略过
+        try {
+            // 按章节阅读：从章节索引直接定位，本页不超过章节末尾
+            if (req.getChapter() != null) {
+                NovelChapterIndex.Chapters chapters = chapterIndex.get(novel.getFileName());
+                int chapter = req.getChapter();
+                if (chapter < 0 || chapter >= chapters.size()) return Result.error(400, "章节不存在");
+                start = chapters.offsets()[chapter];
+                long chapterLength = chapters.end(chapter, fileRegistry.size(novel.getFileName())) - start;
+                int maxSize = req.getSize() != null ? req.getSize() : MAX_CHAPTER_PAGE_SIZE;
+                size = (int) Math.min(chapterLength, maxSize);
+            } else if (req.getPercent() != null) {
+                // 按百分比跳转：字符数换算成所在行的行首，不会落在半个字符或半行上
+                double percent = req.getPercent();
+                if (percent < 0 || percent > 100) return Result.error(400, "百分比超出范围");
+                long totalChars = checkpointIndex.get(novel.getFileName()).totalChars();
+                start = checkpointIndex.seekChar(novel.getFileName(), (long) (totalChars * percent / 100));
+            } else if (req.getLine() != null) {
+                start = checkpointIndex.seekLine(novel.getFileName(), req.getLine());
+                if (start < 0) return Result.error(400, "行号超出范围");
+            }
 
-        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
-            long fileLength = raf.length();
-            long start = req.getStart() != null ? req.getStart() : 0;
-            int size = req.getSize() != null ? req.getSize() : 2048; // 默认读 2KB
+            // 常驻内存的小说直接切片，不查也不写分页缓存
+            boolean pinned = pinnedCache.isPinned(novel.getFileName());
+            NovelPageCache.Page page = pinned ? null : pageCache.get(novel.getFileName(), start, size);
+            if (page == null) {
+                page = loadPage(novel.getFileName(), start, size);
+                // 读到末尾的空页不缓存
+                if (!pinned && page.nextStart() > page.start()) {
+                    pageCache.put(novel.getFileName(), size, page);
+                }
+            }
 
             // 防止越界
-            if (start >= fileLength) {
-                return Result.success(new NovelDTO.ReadRes("", start, start, fileLength, 1.0));
+            if (page.nextStart() == page.start()) {
+                return Result.success(new NovelDTO.ReadRes("", start, start, page.totalSize(), 1.0));
             }
 
-            raf.seek(start);
-            byte[] buffer = new byte[size];
-            int bytesRead = raf.read(buffer);
-
-            if (bytesRead == -1) {
-                return Result.success(new NovelDTO.ReadRes("", start, start, fileLength, 1.0));
+            // 读者大概率马上请求 nextStart，后台预读接下来几页
+            if (!pinned && req.getChapter() == null && page.nextStart() < page.totalSize()) {
+                int pageSize = size;
+                prefetcher.schedule(novel.getFileName(), page.nextStart(), pageSize, next -> loadPage(novel.getFileName(), next, pageSize));
             }
 
+            analytics.record(novel.getId(), UserContext.getUserId(), page.start(), page.totalSize());
+            NovelDTO.ReadRes res = toReadRes(novel.getFileName(), page);
+            res.setChapter(req.getChapter());
+            return Result.success(res);
+
+        } catch (NoSuchFileException e) {
+            return Result.error(500, "文件丢失");
+        } catch (Exception e) {
+            e.printStackTrace();
+            return Result.error(500, "读取文件失败");
+        }
+    }
+
+    /**
+     * 读取一页并按 UTF-8 字符边界截断，同时算出本页之前的字符数 (随页缓存，命中时不再查检查点)
+     * 已到文件末尾时返回 nextStart == start 的空页
+     */
+    private NovelPageCache.Page loadPage(String fileName, long start, int size) throws IOException {
+        // 常驻内存的小说直接切片解码
+        NovelPageCache.Page page = pinnedCache.read(fileName, start, size);
+        if (page == null) page = readPage(fileName, start, size);
+        return page.nextStart() > page.start() ? withCharsBefore(fileName, page) : page;
+    }
+
+    // 从磁盘读取一页
+    private NovelPageCache.Page readPage(String fileName, long start, int size) throws IOException {
+        long fileLength = fileRegistry.size(fileName);
+        if (start >= fileLength) {
+            return new NovelPageCache.Page("", start, start, fileLength);
+        }
+
+        ByteBuffer buffer = fileRegistry.borrowBuffer(size);
+        try {
+            int bytesRead = fileRegistry.read(fileName, start, buffer);
+            List<NovelPageCache.Page> pages = splitPages(buffer.array(), bytesRead, start, size, 1, fileLength);
+            return pages.isEmpty() ? new NovelPageCache.Page("", start, start, fileLength) : pages.get(0);
+        } finally {
+            fileRegistry.returnBuffer(buffer);
+        }
+    }
+
+    /**
+     * 预热开头几页 (默认页大小) 到分页缓存，新书上架后的首批读者直接命中
+     */
+    public void warmUp(String fileName, int pages) throws IOException {
+        if (pinnedCache.isPinned(fileName)) return;
+        long start = 0;
+        for (int i = 0; i < pages; i++) {
+            NovelPageCache.Page page = loadPage(fileName, start, DEFAULT_PAGE_SIZE);
+            if (page.nextStart() <= page.start()) return;
+            pageCache.put(fileName, DEFAULT_PAGE_SIZE, page);
+            start = page.nextStart();
+        }
+    }
+
+    /**
+     * 批量阅读：一次读出 count 页覆盖的字节，再按与 readContent 相同的字符边界切页
+     * 弱网下一次往返拿到多页，每页各自带 currentStart / nextStart
+     */
+    public Result<List<NovelDTO.ReadRes>> readContentBatch(NovelDTO.ReadReq req) {
+        SysNovel novel = getNovel(req.getNovelId());
+        if (novel == null) return Result.error(404, "小说不存在");
 
+        long start = req.getStart() != null ? req.getStart() : 0;
+        int size = req.getSize() != null ? req.getSize() : DEFAULT_PAGE_SIZE;
+        int count = req.getCount() != null ? req.getCount() : 5;
+        if (size <= 0 || count <= 0) return Result.error(400, "参数错误");
+        count = Math.min(Math.min(count, MAX_BATCH_PAGES), Math.max(1, MAX_BATCH_BYTES / size));
+
+        ByteBuffer buffer = null;
+        try {
+            String fileName = novel.getFileName();
+            long fileLength = fileRegistry.size(fileName);
+            if (start >= fileLength) {
+                return Result.success(List.of(new NovelDTO.ReadRes("", start, start, fileLength, 1.0)));
+            }
 
-            int validLength = bytesRead;
-            // 如果读满了 buffer，且还没到文件末尾，才需要判断截断
-            if (bytesRead == size && start + size < fileLength) {
-                int checkIndex = bytesRead - 1;
-                while (checkIndex > 0 && (buffer[checkIndex] & 0xC0) == 0x80) {
-                    checkIndex--;
+            List<NovelPageCache.Page> pages;
+            boolean pinned = pinnedCache.isPinned(fileName);
+            if (pinned) {
+                pages = new ArrayList<>(count);
+                long position = start;
+                while (pages.size() < count && position < fileLength) {
+                    NovelPageCache.Page page = loadPage(fileName, position, size);
+                    if (page.nextStart() <= page.start()) break;
+                    pages.add(page);
+                    position = page.nextStart();
                 }
+            } else {
+                // 第 i 页的起点不超过 start + i * size，读 count * size 字节足够覆盖所有页
+                buffer = fileRegistry.borrowBuffer(count * size);
+                int bytesRead = fileRegistry.read(fileName, start, buffer);
+                pages = splitPages(buffer.array(), bytesRead, start, size, count, fileLength);
+                // 只为第一页查检查点，之后按每页的字符数累加
+                for (int i = 0; i < pages.size(); i++) {
+                    NovelPageCache.Page page = pages.get(i);
+                    pages.set(i, i == 0 ? withCharsBefore(fileName, page) : page.withCharsBefore(pages.get(i - 1).charsThrough()));
+                }
+            }
 
-                // checkIndex 现在指向最后一个字符的头部
-                // 判断这个字符是否完整
-                byte head = buffer[checkIndex];
-                int charBytes = 0;
-                if ((head & 0x80) == 0) charBytes = 1;       // 0xxxxxxx
-                else if ((head & 0xE0) == 0xC0) charBytes = 2; // 110xxxxx
-                else if ((head & 0xF0) == 0xE0) charBytes = 3; // 1110xxxx
-                else if ((head & 0xF8) == 0xF0) charBytes = 4; // 11110xxx
-
-                // 如果 (头部位置 + 该字符应有长度) > 实际读取长度，说明被截断了
-                if (checkIndex + charBytes > bytesRead) {
-                    // 截断了！这一页有效长度只到 checkIndex
-                    validLength = checkIndex;
+            List<NovelDTO.ReadRes> list = new ArrayList<>(pages.size());
+            for (NovelPageCache.Page page : pages) {
+                if (!pinned) pageCache.put(novel.getFileName(), size, page);
+                list.add(toReadRes(fileName, page));
+                analytics.record(novel.getId(), UserContext.getUserId(), page.start(), page.totalSize());
+            }
+            if (list.isEmpty()) {
+                list.add(new NovelDTO.ReadRes("", start, start, fileLength, 1.0));
+            } else {
+                NovelPageCache.Page last = pages.get(pages.size() - 1);
+                if (!pinned && last.nextStart() < fileLength) {
+                    prefetcher.schedule(novel.getFileName(), last.nextStart(), size, next -> loadPage(novel.getFileName(), next, size));
                 }
             }
+            return Result.success(list);
+
+        } catch (NoSuchFileException e) {
+            return Result.error(500, "文件丢失");
+        } catch (Exception e) {
+            e.printStackTrace();
+            return Result.error(500, "读取文件失败");
+        } finally {
+            fileRegistry.returnBuffer(buffer);
+        }
+    }
+
+    /**
+     * 把从 start 开始读到的 bytesRead 个字节切成最多 count 页
+     * 每页读满 size 且未到文件末尾时，回退到最后一个完整 UTF-8 字符之后
+     */
+    private static List<NovelPageCache.Page> splitPages(byte[] buffer, int bytesRead, long start, int size,
+                                                        int count, long fileLength) {
+        List<NovelPageCache.Page> pages = new ArrayList<>(count);
+        int offset = 0;
+        while (pages.size() < count && offset < bytesRead) {
+            long pageStart = start + offset;
+            int available = Math.min(size, bytesRead - offset);
+            int validLength = available;
+            // 如果读满了一页，且还没到文件末尾，才需要判断截断
+            if (available == size && pageStart + size < fileLength) {
+                validLength = utf8SafeLength(buffer, offset, available);
+            }
+            if (validLength == 0) break;
 
             // 构建字符串
-            String content = new String(buffer, 0, validLength, StandardCharsets.UTF_8);
-            long nextStart = start + validLength;
+            String content = new String(buffer, offset, validLength, StandardCharsets.UTF_8);
+            pages.add(new NovelPageCache.Page(content, pageStart, pageStart + validLength, fileLength));
+            offset += validLength;
+        }
+        return pages;
+    }
 
-            // 计算进度
-            double progress = (double) nextStart / fileLength;
+    private NovelDTO.ReadRes toReadRes(String fileName, NovelPageCache.Page page) {
+        // 计算进度：读到本页末尾的字符数 / 全书字符数 (检查点不可用时退回按字节计)
+        double progress = (double) page.nextStart() / page.totalSize();
+        if (page.charsBefore() >= 0) {
+            try {
+                long totalChars = checkpointIndex.get(fileName).totalChars();
+                progress = totalChars == 0 ? 1.0 : (double) page.charsThrough() / totalChars;
+            } catch (IOException e) {
+                log.warn("读取小说 {} 字符检查点失败: {}", fileName, e.getMessage());
+            }
+        }
 
-            NovelDTO.ReadRes res = new NovelDTO.ReadRes();
-            res.setContent(content);
-            res.setCurrentStart(start);
-            res.setNextStart(nextStart); // 前端下一页请求这个 offset
-            res.setTotalSize(fileLength);
-            res.setProgress((double) Math.round(progress * 10000) / 100); // 保留2位小数
+        NovelDTO.ReadRes res = new NovelDTO.ReadRes();
+        res.setContent(page.content());
+        res.setCurrentStart(page.start());
+        res.setNextStart(page.nextStart()); // 前端下一页请求这个 offset
+        res.setTotalSize(page.totalSize());
+        res.setProgress((double) Math.round(progress * 10000) / 100); // 保留2位小数
+        return res;
+    }
 
-            return Result.success(res);
+    // 本页之前的字符数由检查点给出 (只在加载时算一次)，检查点不可用时保持未知
+    private NovelPageCache.Page withCharsBefore(String fileName, NovelPageCache.Page page) {
+        try {
+            return page.withCharsBefore(checkpointIndex.charsBefore(fileName, page.start()));
+        } catch (IOException e) {
+            log.warn("读取小说 {} 字符检查点失败: {}", fileName, e.getMessage());
+            return page;
+        }
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            return Result.error(500, "读取文件失败");
+    /**
+     * 原始字节下载：支持 Range (206) / ETag / If-None-Match (304)
+     * Tomcat 下交给 sendfile 零拷贝发送，否则用 FileChannel.transferTo 直接写出 (压缩文件解压后写出)
+     */
+    public void streamRaw(Long novelId, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        SysNovel novel = getNovel(novelId);
+        if (novel == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        String fileName = novel.getFileName();
+        long fileLength;
+        String etag;
+        try {
+            fileLength = fileRegistry.size(fileName);
+            long lastModified = storage.lastModified(fileName);
+            etag = "\"" + FileUtil.mainName(fileName) + "-" + Long.toHexString(fileLength) + "-" + Long.toHexString(lastModified) + "\"";
+        } catch (NoSuchFileException e) {
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "文件丢失");
+            return;
+        }
+
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && (ifNoneMatch.equals("*") || ifNoneMatch.contains(etag))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long start = 0;
+        long end = fileLength; // 不含
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        // If-Range 与当前版本不一致时忽略 Range，返回完整内容
+        if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            long[] parsed = parseRange(range, fileLength);
+            if (parsed == null) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + fileLength);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (parsed.length == 2) {
+                start = parsed[0];
+                end = parsed[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + fileLength);
+            }
+        }
+
+        long length = end - start;
+        response.setContentType("text/plain;charset=UTF-8");
+        response.setContentLengthLong(length);
+        if ("HEAD".equalsIgnoreCase(request.getMethod()) || length == 0) return;
+
+        // 压缩存储或不在本地磁盘上的文件不能直接 sendfile
+        Path localPath = fileRegistry.path(fileName);
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT)) && localPath != null && !fileRegistry.isCompressed(fileName)) {
+            request.setAttribute(SENDFILE_FILENAME, localPath.toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+            return;
+        }
+        WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+        fileRegistry.transferTo(fileName, start, length, out);
+    }
+
+    /**
+     * 解析单段 Range: bytes=a-b / bytes=a- / bytes=-n
+     * @return {start, end(不含)}；多段或无法识别时返回空数组 (按完整内容处理)；范围越界返回 null
+     */
+    static long[] parseRange(String range, long fileLength) {
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) return new long[0];
+        String spec = range.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) return new long[0];
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start, end;
+            if (first.isEmpty()) {
+                // 后缀范围：最后 n 个字节
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) return null;
+                start = Math.max(0, fileLength - suffix);
+                end = fileLength;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? fileLength : Math.min(Long.parseLong(last) + 1, fileLength);
+            }
+            if (start >= fileLength || start >= end) return null;
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
         }
     }
 
+    // 章节目录
+    public Result<List<NovelDTO.ChapterItem>> getChapters(Long novelId) {
+        SysNovel novel = getNovel(novelId);
+        if (novel == null) return Result.error(404, "小说不存在");
+
+        try {
+            long fileLength = fileRegistry.size(novel.getFileName());
+            NovelChapterIndex.Chapters chapters = chapterIndex.get(novel.getFileName());
+            List<NovelDTO.ChapterItem> list = new ArrayList<>(chapters.size());
+            for (int i = 0; i < chapters.size(); i++) {
+                list.add(new NovelDTO.ChapterItem(i, chapters.titles()[i], chapters.offsets()[i], chapters.end(i, fileLength)));
+            }
+            return Result.success(list);
+        } catch (NoSuchFileException e) {
+            return Result.error(500, "文件丢失");
+        } catch (IOException e) {
+            log.error("读取章节索引失败: {}", novel.getFileName(), e);
+            return Result.error(500, "读取章节失败");
+        }
+    }
+
+    /**
+     * 按近期阅读热度调整常驻内存的小说 (内容相同的记录共用一个文件)
+     */
+    @Scheduled(fixedDelayString = "${app.novel-pin.rebalance-millis:60000}")
+    public void rebalancePinned() {
+        List<String> hottest = new ArrayList<>();
+        for (Long novelId : analytics.hottest(pinTopN * 2)) {
+            SysNovel novel = getNovel(novelId);
+            if (novel != null && !hottest.contains(novel.getFileName())) hottest.add(novel.getFileName());
+        }
+        pinnedCache.rebalance(hottest);
+    }
+
+    // 小说元数据缓存，读取页面时不再查库
+    public SysNovel getNovel(Long novelId) {
+        if (novelId == null) return null;
+        return novelCache.computeIfAbsent(novelId, novelMapper::selectById);
+    }
+
+    // 小说记录变更后调用；在事务中调用时提交后再清一次，期间并发读到的旧记录不会留在缓存里
+    public void evictNovel(Long novelId) {
+        novelCache.remove(novelId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    novelCache.remove(novelId);
+                }
+            });
+        }
+    }
+
+    /**
+     * 文件不再被任何记录引用、即将删除时调用：关闭句柄，清除内存中的索引和分页缓存
+     * 文件按内容命名、内容不变，仍被引用时这些缓存继续有效
+     */
+    public void evictFile(String fileName) {
+        pinnedCache.unpin(fileName);
+        fileRegistry.invalidate(fileName);
+        chapterIndex.invalidate(fileName);
+        searchIndex.invalidate(fileName);
+        checkpointIndex.invalidate(fileName);
+        pageCache.invalidate(fileName);
+    }
+
+    /**
+     * 计算 buffer[offset, offset + bytesRead) 中不截断 UTF-8 字符的有效长度
+     * 最后一个字符不完整时，有效长度截到该字符头部之前
+     */
+    static int utf8SafeLength(byte[] buffer, int offset, int bytesRead) {
+        int checkIndex = bytesRead - 1;
+        while (checkIndex > 0 && (buffer[offset + checkIndex] & 0xC0) == 0x80) {
+            checkIndex--;
+        }
+
+        // checkIndex 现在指向最后一个字符的头部
+        // 判断这个字符是否完整
+        byte head = buffer[offset + checkIndex];
+        int charBytes = 0;
+        if ((head & 0x80) == 0) charBytes = 1;       // 0xxxxxxx
+        else if ((head & 0xE0) == 0xC0) charBytes = 2; // 110xxxxx
+        else if ((head & 0xF0) == 0xE0) charBytes = 3; // 1110xxxx
+        else if ((head & 0xF8) == 0xF0) charBytes = 4; // 11110xxx
+
+        // 如果 (头部位置 + 该字符应有长度) > 实际读取长度，说明被截断了
+        if (checkIndex + charBytes > bytesRead) {
+            // 截断了！这一页有效长度只到 checkIndex
+            return checkIndex;
+        }
+        return bytesRead;
+    }
+
     // 3. 保存书签
     public Result<String> saveBookmark(NovelDTO.BookmarkReq req) {
+        if (req.getNovelId() == null || req.getByteOffset() == null) return Result.error(400, "参数错误");
         Long userId = UserContext.getUserId();
 
-        // 查询是否已有书签
-        SysNovelBookmark bookmark = bookmarkMapper.selectByUserIdAndNovelId(userId, req.getNovelId());
-
-        if (bookmark == null) {
-            bookmark = new SysNovelBookmark();
-            bookmark.setUserId(userId);
-            bookmark.setNovelId(req.getNovelId());
-            bookmark.setByteOffset(req.getByteOffset());
-            bookmark.setUpdateTime(LocalDateTime.now());
-            bookmarkMapper.insert(bookmark);
-        } else {
-            bookmark.setByteOffset(req.getByteOffset());
-            bookmark.setUpdateTime(LocalDateTime.now());
-            bookmarkMapper.update(bookmark);
-        }
+        // 只写入内存缓冲，由定时任务合并后批量写库
+        bookmarkBuffer.put(userId, req.getNovelId(), req.getByteOffset());
         return Result.success("书签已保存");
     }
 
     // 4. 获取书签
     public Result<Long> getBookmark(Long novelId) {
-        Long userId = UserContext.getUserId();
-        SysNovelBookmark bookmark = bookmarkMapper.selectByUserIdAndNovelId(userId, novelId);
+        return Result.success(currentOffset(UserContext.getUserId(), novelId));
+    }
+
+    // 书签位置：先查尚未写库的最新位置
+    public long currentOffset(Long userId, Long novelId) {
+        Long pending = bookmarkBuffer.get(userId, novelId);
+        if (pending != null) return pending;
 
-        return Result.success(bookmark != null ? bookmark.getByteOffset() : 0L);
+        SysNovelBookmark bookmark = bookmarkMapper.selectByUserIdAndNovelId(userId, novelId);
+        return bookmark != null ? bookmark.getByteOffset() : 0L;
     }
 }
\ No newline at end of file
@@ -0,0 +1,304 @@
+package com.moonpointer.xs.service;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.IdUtil;
+import com.moonpointer.xs.common.Result;
+import com.moonpointer.xs.component.NovelStorage;
+import com.moonpointer.xs.dto.NovelDTO;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分片断点续传上传
+ * init 建立会话并分配一个存储草稿；每个分片按 index * chunkSize 用位置写直接落进草稿，
+ * 边写边算 SHA-256 与请求头里的摘要核对；断线后查询缺失的分片重传即可；
+ * commit 时所有分片齐全才把草稿交给导入流水线 (原子提交为暂存文件)
+ * 请求体按固定大小的缓冲区流式写入，内存占用与文件大小无关
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class NovelUploadService {
+
+    private static final int MIN_CHUNK_SIZE = 256 * 1024;
+    private static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final NovelStorage storage;
+    private final NovelIngestService ingestService;
+
+    // 单个文件大小上限
+    @Value("${app.novel-upload.max-size:536870912}")
+    private long maxSize;
+
+    // 客户端未指定时的分片大小
+    @Value("${app.novel-upload.chunk-size:4194304}")
+    private int defaultChunkSize;
+
+    // 同时进行的上传会话上限
+    @Value("${app.novel-upload.max-sessions:16}")
+    private int maxSessions;
+
+    // 会话空闲多久后丢弃
+    @Value("${app.novel-upload.idle-minutes:60}")
+    private long idleMinutes;
+
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+
+    public Result<NovelDTO.UploadSession> init(NovelDTO.UploadInitReq req) {
+        if (!StringUtils.hasText(req.getFileName()) || !"txt".equalsIgnoreCase(FileUtil.getSuffix(req.getFileName()))) {
+            return Result.error(400, "只支持 TXT 格式");
+        }
+        if (req.getTotalSize() == null || req.getTotalSize() <= 0) return Result.error(400, "文件为空");
+        if (req.getTotalSize() > maxSize) return Result.error(400, "文件过大");
+        if (req.getSha256() != null && !isSha256Hex(req.getSha256())) return Result.error(400, "摘要格式错误");
+        if (uploads.size() >= maxSessions) return Result.error(429, "上传会话过多，请稍后再试");
+
+        int chunkSize = req.getChunkSize() == null ? defaultChunkSize
+                : Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, req.getChunkSize()));
+        long chunkCount = (req.getTotalSize() + chunkSize - 1) / chunkSize;
+        try {
+            Upload upload = new Upload(IdUtil.fastSimpleUUID(), req, chunkSize, (int) chunkCount, storage.create());
+            uploads.put(upload.id, upload);
+            log.info("分片上传开始: {} {} ({} 字节, {} 片)", upload.id, upload.fileName, upload.totalSize, chunkCount);
+            return Result.success(upload.toDto());
+        } catch (IOException e) {
+            log.error("创建上传草稿失败", e);
+            return Result.error(500, "上传失败: " + e.getMessage());
+        }
+    }
+
+    public Result<NovelDTO.UploadSession> status(String uploadId) {
+        Upload upload = uploads.get(uploadId);
+        if (upload == null) return Result.error(404, "上传会话不存在或已过期");
+        upload.touch();
+        return Result.success(upload.toDto());
+    }
+
+    /**
+     * 写入第 index 片，sha256 为该片内容的十六进制摘要
+     * 同一分片可以重复上传 (后一次覆盖前一次)，校验失败的分片保持缺失状态
+     */
+    public Result<String> putChunk(String uploadId, int index, String sha256, InputStream body) {
+        Upload upload = uploads.get(uploadId);
+        if (upload == null) return Result.error(404, "上传会话不存在或已过期");
+        if (index < 0 || index >= upload.chunkCount) return Result.error(400, "分片序号超出范围");
+        if (!isSha256Hex(sha256)) return Result.error(400, "缺少分片摘要");
+        if (!upload.beginWrite(index)) return Result.error(409, "该分片正在上传或上传已提交");
+
+        boolean ok = false;
+        try {
+            long position = (long) index * upload.chunkSize;
+            long expected = Math.min(upload.chunkSize, upload.totalSize - position);
+            MessageDigest digest = sha256();
+            FileChannel channel = upload.draft.channel();
+            byte[] bytes = new byte[COPY_BUFFER_SIZE];
+            long written = 0;
+            int n;
+            while ((n = body.read(bytes)) != -1) {
+                if (written + n > expected) return Result.error(400, "分片长度不符");
+                digest.update(bytes, 0, n);
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, n);
+                while (buffer.hasRemaining()) {
+                    // 位置写不改变通道 position，不同分片可以并发写入
+                    channel.write(buffer, position + written + buffer.position());
+                }
+                written += n;
+            }
+            if (written != expected) return Result.error(400, "分片长度不符");
+            if (!HexFormat.of().formatHex(digest.digest()).equalsIgnoreCase(sha256)) {
+                return Result.error(400, "分片校验失败");
+            }
+            ok = true;
+            return Result.success("ok");
+        } catch (IOException e) {
+            log.warn("写入分片失败: {} #{}", uploadId, index, e);
+            return Result.error(500, "写入分片失败");
+        } finally {
+            upload.endWrite(index, ok);
+        }
+    }
+
+    /**
+     * 所有分片齐全后提交给导入流水线
+     * @return 导入任务 ID
+     */
+    public Result<String> commit(String uploadId) {
+        Upload upload = uploads.get(uploadId);
+        if (upload == null) return Result.error(404, "上传会话不存在或已过期");
+        synchronized (upload) {
+            if (upload.committed) return Result.error(409, "上传已提交");
+            if (!upload.writing.isEmpty()) return Result.error(409, "还有分片正在上传");
+            if (upload.received.cardinality() != upload.chunkCount) return Result.error(400, "分片不完整");
+            upload.committed = true;
+        }
+        try {
+            FileChannel channel = upload.draft.channel();
+            channel.force(false);
+            if (upload.sha256 != null && !upload.sha256.equalsIgnoreCase(digest(channel))) {
+                uploads.remove(uploadId);
+                upload.draft.close();
+                return Result.error(400, "文件校验失败，请重新上传");
+            }
+        } catch (IOException e) {
+            synchronized (upload) {
+                upload.committed = false;
+            }
+            log.error("校验上传文件失败: {}", uploadId, e);
+            return Result.error(500, "上传失败: " + e.getMessage());
+        }
+
+        Result<String> result = ingestService.submit(upload.fileName, upload.title, upload.replaceNovelId, () -> upload.draft);
+        if (result.getCode() == 429) {
+            // 流水线已满，草稿未被接管，可以稍后再次 commit
+            synchronized (upload) {
+                upload.committed = false;
+            }
+            upload.touch();
+            return result;
+        }
+        uploads.remove(uploadId);
+        log.info("分片上传完成: {} -> 导入任务 {}", uploadId, result.getData());
+        return result;
+    }
+
+    public Result<String> abort(String uploadId) {
+        Upload upload = uploads.remove(uploadId);
+        if (upload == null) return Result.error(404, "上传会话不存在或已过期");
+        upload.discard();
+        return Result.success("已取消");
+    }
+
+    // 定时丢弃长时间没有动静的会话
+    @Scheduled(fixedDelay = 300_000)
+    public void purgeIdleUploads() {
+        long deadline = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(idleMinutes);
+        uploads.values().removeIf(upload -> {
+            synchronized (upload) {
+                if (upload.lastAccess >= deadline || upload.committed || !upload.writing.isEmpty()) return false;
+            }
+            log.info("分片上传超时丢弃: {} {}", upload.id, upload.fileName);
+            upload.discard();
+            return true;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        uploads.values().forEach(Upload::discard);
+        uploads.clear();
+    }
+
+    // 从头读一遍草稿计算整体摘要
+    private static String digest(FileChannel channel) throws IOException {
+        MessageDigest digest = sha256();
+        ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+        long position = 0;
+        int n;
+        while ((n = channel.read(buffer, position)) > 0) {
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+            position += n;
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static boolean isSha256Hex(String value) {
+        return value != null && value.length() == 64 && value.chars().allMatch(c -> Character.digit(c, 16) >= 0);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 一次分片上传的状态
+     */
+    private static final class Upload {
+        final String id;
+        final String fileName;
+        final String title;
+        final Long replaceNovelId;
+        final String sha256;
+        final long totalSize;
+        final int chunkSize;
+        final int chunkCount;
+        final NovelStorage.Draft draft;
+        // 已校验通过的分片、正在写入的分片
+        final BitSet received = new BitSet();
+        final Set<Integer> writing = new HashSet<>();
+        boolean committed;
+        volatile long lastAccess = System.currentTimeMillis();
+
+        Upload(String id, NovelDTO.UploadInitReq req, int chunkSize, int chunkCount, NovelStorage.Draft draft) {
+            this.id = id;
+            this.fileName = req.getFileName();
+            this.title = req.getTitle();
+            this.replaceNovelId = req.getNovelId();
+            this.sha256 = req.getSha256();
+            this.totalSize = req.getTotalSize();
+            this.chunkSize = chunkSize;
+            this.chunkCount = chunkCount;
+            this.draft = draft;
+        }
+
+        void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+
+        synchronized boolean beginWrite(int index) {
+            if (committed || !writing.add(index)) return false;
+            // 重传时先作废旧内容，写到一半失败不会被当成已完成
+            received.clear(index);
+            touch();
+            return true;
+        }
+
+        synchronized void endWrite(int index, boolean ok) {
+            if (ok) received.set(index);
+            writing.remove(index);
+            touch();
+        }
+
+        void discard() {
+            try {
+                draft.close();
+            } catch (IOException e) {
+                log.warn("删除上传草稿失败: {}", id, e);
+            }
+        }
+
+        synchronized NovelDTO.UploadSession toDto() {
+            NovelDTO.UploadSession dto = new NovelDTO.UploadSession();
+            dto.setUploadId(id);
+            dto.setFileName(fileName);
+            dto.setTotalSize(totalSize);
+            dto.setChunkSize(chunkSize);
+            dto.setChunkCount(chunkCount);
+            List<Integer> missing = new ArrayList<>();
+            for (int i = received.nextClearBit(0); i < chunkCount; i = received.nextClearBit(i + 1)) missing.add(i);
+            dto.setMissing(missing);
+            return dto;
+        }
+    }
+}
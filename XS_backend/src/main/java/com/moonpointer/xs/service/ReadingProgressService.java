@@ -0,0 +1,106 @@
+package com.moonpointer.xs.service;
+
+import com.moonpointer.xs.component.NovelBookmarkBuffer;
+import com.moonpointer.xs.component.UserMessageRelay;
+import com.moonpointer.xs.dto.NovelDTO;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpSession;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 多端阅读进度同步
+ * 客户端通过 STOMP 上报位置，同一用户同一本书在一个推送周期内只保留最新位置，
+ * 定时推送给该用户的其他会话 (/user/queue/progress)，并写入书签缓冲延迟落库
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ReadingProgressService {
+
+    private static final String PROGRESS_QUEUE = "/queue/progress";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final SimpUserRegistry userRegistry;
+    private final UserMessageRelay messageRelay;
+    private final NovelBookmarkBuffer bookmarkBuffer;
+    private final NovelService novelService;
+
+    // (userId, novelId) -> 待推送的最新位置
+    private final Map<Key, Update> pending = new ConcurrentHashMap<>();
+
+    private record Key(long userId, long novelId) {
+    }
+
+    // sourceSession 为上报位置的会话，不再推回给它
+    private record Update(NovelDTO.ProgressMsg msg, String sourceSession) {
+    }
+
+    public void report(Long userId, String sessionId, NovelDTO.ProgressMsg msg) {
+        if (userId == null || msg.getNovelId() == null || msg.getByteOffset() == null) return;
+        msg.setUpdateTime(System.currentTimeMillis());
+        pending.put(new Key(userId, msg.getNovelId()), new Update(msg, sessionId));
+    }
+
+    /**
+     * 订阅时返回的当前位置
+     */
+    public NovelDTO.ProgressMsg current(Long userId, Long novelId) {
+        NovelDTO.ProgressMsg msg = new NovelDTO.ProgressMsg();
+        msg.setNovelId(novelId);
+        Update update = pending.get(new Key(userId, novelId));
+        if (update != null) {
+            msg.setByteOffset(update.msg().getByteOffset());
+            msg.setUpdateTime(update.msg().getUpdateTime());
+        } else {
+            msg.setByteOffset(novelService.currentOffset(userId, novelId));
+        }
+        return msg;
+    }
+
+    @Scheduled(fixedDelayString = "${app.reading-progress.push-millis:500}")
+    public void push() {
+        if (pending.isEmpty()) return;
+
+        List<Map.Entry<Key, Update>> entries = new ArrayList<>(pending.entrySet());
+        for (Map.Entry<Key, Update> entry : entries) {
+            // 推送期间又有新位置的留到下一轮
+            if (!pending.remove(entry.getKey(), entry.getValue())) continue;
+
+            Key key = entry.getKey();
+            Update update = entry.getValue();
+            bookmarkBuffer.put(key.userId(), key.novelId(), update.msg().getByteOffset());
+            try {
+                sendToOtherSessions(String.valueOf(key.userId()), update);
+            } catch (Exception e) {
+                log.debug("推送阅读进度失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void sendToOtherSessions(String userId, Update update) {
+        // 上报的会话在本节点，其他节点上的会话全部推送
+        messageRelay.sendToRemoteNodes(userId, PROGRESS_QUEUE, update.msg());
+        SimpUser user = userRegistry.getUser(userId);
+        if (user == null) return;
+        for (SimpSession session : user.getSessions()) {
+            if (session.getId().equals(update.sourceSession())) continue;
+            // 带上会话 ID 时只投递到该会话
+            SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            headers.setSessionId(session.getId());
+            headers.setLeaveMutable(true);
+            messagingTemplate.convertAndSendToUser(userId, PROGRESS_QUEUE, update.msg(), headers.getMessageHeaders());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.moonpointer.xs.utils;
+
+import java.util.Arrays;
+
+/**
+ * 字节级 Boyer-Moore-Horspool 匹配
+ * 直接在 UTF-8 字节上查找，不需要先解码成字符串；UTF-8 的首字节与续字节取值不重叠，
+ * 只要模式本身是合法的 UTF-8，匹配位置一定落在字符边界上
+ * ignoreAsciiCase 时只折叠 A-Z，多字节字符原样比较
+ */
+public final class HorspoolMatcher {
+
+    private final byte[] pattern;
+    private final boolean ignoreAsciiCase;
+    // 窗口末字节为 b 时窗口可右移的距离
+    private final int[] shift = new int[256];
+
+    public HorspoolMatcher(byte[] pattern, boolean ignoreAsciiCase) {
+        if (pattern.length == 0) throw new IllegalArgumentException("模式不能为空");
+        this.ignoreAsciiCase = ignoreAsciiCase;
+        this.pattern = new byte[pattern.length];
+        for (int i = 0; i < pattern.length; i++) this.pattern[i] = fold(pattern[i]);
+
+        int m = pattern.length;
+        Arrays.fill(shift, m);
+        for (int i = 0; i < m - 1; i++) {
+            int b = this.pattern[i] & 0xFF;
+            shift[b] = m - 1 - i;
+            if (ignoreAsciiCase && b >= 'a' && b <= 'z') shift[b - 32] = m - 1 - i;
+        }
+    }
+
+    public int length() {
+        return pattern.length;
+    }
+
+    /**
+     * 在 text[from, to) 中查找第一次出现的位置，找不到返回 -1
+     */
+    public int indexOf(byte[] text, int from, int to) {
+        int m = pattern.length;
+        int last = m - 1;
+        int i = from;
+        while (i <= to - m) {
+            byte tail = text[i + last];
+            if (fold(tail) == pattern[last]) {
+                int j = last - 1;
+                while (j >= 0 && fold(text[i + j]) == pattern[j]) j--;
+                if (j < 0) return i;
+            }
+            i += shift[tail & 0xFF];
+        }
+        return -1;
+    }
+
+    private byte fold(byte b) {
+        return ignoreAsciiCase && b >= 'A' && b <= 'Z' ? (byte) (b + 32) : b;
+    }
+}
@@ -0,0 +1,159 @@
+package com.moonpointer.xs.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 小说分块压缩存储格式
+ * 原文按固定大小切块，每块单独 deflate 压缩，文件头带块偏移表，随机读取只需解压覆盖到的块
+ * <pre>
+ * magic(int) version(int) blockSize(int) length(long) blockCount(int)
+ * offsets(long[blockCount + 1])  第 i 块位于 [offsets[i], offsets[i + 1])
+ * blocks...
+ * </pre>
+ */
+public final class NovelBlockFormat {
+
+    public static final int MAGIC = 0x5853425A; // "XSBZ"
+    private static final int VERSION = 1;
+    private static final int FIXED_HEADER = 24;
+
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    private NovelBlockFormat() {
+    }
+
+    /**
+     * 块索引
+     * @param blockSize 每块解压后的字节数 (最后一块可能更短)
+     * @param length    原文总字节数
+     * @param offsets   每块在文件中的起始位置，末尾多一个元素表示最后一块的结束位置
+     */
+    public record Index(int blockSize, long length, long[] offsets) {
+        public int blockCount() {
+            return offsets.length - 1;
+        }
+
+        // 第 block 块解压后的长度
+        public int rawLength(int block) {
+            return (int) Math.min(blockSize, length - (long) block * blockSize);
+        }
+    }
+
+    /**
+     * 读取文件头，普通文本文件返回 null
+     */
+    public static Index readIndex(FileChannel channel) throws IOException {
+        if (channel.size() < FIXED_HEADER) return null;
+        ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER);
+        readFully(channel, header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC) return null;
+        if (header.getInt() != VERSION) throw new IOException("不支持的压缩格式版本");
+        int blockSize = header.getInt();
+        long length = header.getLong();
+        int blockCount = header.getInt();
+
+        ByteBuffer table = ByteBuffer.allocate((blockCount + 1) * 8);
+        readFully(channel, table, FIXED_HEADER);
+        table.flip();
+        long[] offsets = new long[blockCount + 1];
+        for (int i = 0; i <= blockCount; i++) offsets[i] = table.getLong();
+        return new Index(blockSize, length, offsets);
+    }
+
+    /**
+     * 读取并解压第 block 块
+     */
+    public static byte[] readBlock(FileChannel channel, Index index, int block) throws IOException {
+        long from = index.offsets()[block];
+        int compressedLength = (int) (index.offsets()[block + 1] - from);
+        ByteBuffer compressed = ByteBuffer.allocate(compressedLength);
+        readFully(channel, compressed, from);
+
+        byte[] raw = new byte[index.rawLength(block)];
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(compressed.array(), 0, compressedLength);
+        try {
+            int n = 0;
+            while (n < raw.length && !inflater.finished()) {
+                int r = inflater.inflate(raw, n, raw.length - n);
+                if (r == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                n += r;
+            }
+            if (n != raw.length) throw new IOException("压缩块损坏: " + block);
+        } catch (DataFormatException e) {
+            throw new IOException("压缩块损坏: " + block, e);
+        }
+        return raw;
+    }
+
+    /**
+     * 把 in 中的普通文本按分块压缩格式写入 out (从位置 0 开始)
+     * @return 写入的字节数
+     */
+    public static long compress(FileChannel in, FileChannel out, int blockSize) throws IOException {
+        long length = in.size();
+        int blockCount = (int) ((length + blockSize - 1) / blockSize);
+        long[] offsets = new long[blockCount + 1];
+        long position = FIXED_HEADER + (blockCount + 1) * 8L;
+
+        ByteBuffer raw = ByteBuffer.allocate(blockSize);
+        byte[] compressed = new byte[blockSize + blockSize / 10 + 64];
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            for (int i = 0; i < blockCount; i++) {
+                raw.clear();
+                raw.limit((int) Math.min(blockSize, length - (long) i * blockSize));
+                readFully(in, raw, (long) i * blockSize);
+
+                deflater.reset();
+                deflater.setInput(raw.array(), 0, raw.limit());
+                deflater.finish();
+                int n = 0;
+                while (!deflater.finished()) {
+                    if (n == compressed.length) {
+                        compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                    }
+                    n += deflater.deflate(compressed, n, compressed.length - n);
+                }
+
+                offsets[i] = position;
+                writeFully(out, ByteBuffer.wrap(compressed, 0, n), position);
+                position += n;
+            }
+        } finally {
+            deflater.end();
+        }
+        offsets[blockCount] = position;
+
+        ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER + (blockCount + 1) * 8);
+        header.putInt(MAGIC).putInt(VERSION).putInt(blockSize).putLong(length).putInt(blockCount);
+        for (long offset : offsets) header.putLong(offset);
+        header.flip();
+        writeFully(out, header, 0);
+        return position;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer dst, long position) throws IOException {
+        long pos = position;
+        while (dst.hasRemaining()) {
+            int n = channel.read(dst, pos);
+            if (n < 0) throw new IOException("文件提前结束");
+            pos += n;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer src, long position) throws IOException {
+        long pos = position;
+        while (src.hasRemaining()) {
+            pos += channel.write(src, pos);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.moonpointer.xs.component;
+
+import com.moonpointer.xs.entity.SysChatMsg;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatMessageWalTest {
+
+    @TempDir
+    Path dir;
+
+    static SysChatMsg message(long id, String content) {
+        SysChatMsg msg = new SysChatMsg();
+        msg.setId(id);
+        msg.setSenderId(1L);
+        msg.setReceiverId(2L);
+        msg.setContent(content);
+        msg.setMsgType(0);
+        msg.setIsRead(0);
+        msg.setCreateTime(LocalDateTime.of(2026, 1, 2, 3, 4, 5));
+        return msg;
+    }
+
+    // 模拟崩溃：最后一条记录只写了一半
+    static void appendTornRecord(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer torn = ByteBuffer.allocate(14);
+            torn.putInt(100).putInt(12345).put(new byte[6]).flip();
+            channel.write(torn);
+        }
+    }
+
+    static long fileCount(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    void replaysCompleteRecordsAndDropsTornTail() throws IOException {
+        ChatMessageWal wal = new ChatMessageWal(dir, 1 << 20, false);
+        wal.append(message(1, "你好"));
+        wal.append(message(2, null));
+        wal.append(message(3, "third"));
+        // 不关闭，直接当作进程崩溃
+        appendTornRecord(dir.resolve("chat-0.wal"));
+
+        ChatMessageWal reopened = new ChatMessageWal(dir, 1 << 20, false);
+        List<SysChatMsg> recovered = reopened.recover();
+
+        assertEquals(List.of(1L, 2L, 3L), recovered.stream().map(SysChatMsg::getId).toList());
+        assertEquals("你好", recovered.get(0).getContent());
+        assertNull(recovered.get(1).getContent());
+        assertEquals("1_2", recovered.get(2).getConversationId());
+        assertEquals(LocalDateTime.of(2026, 1, 2, 3, 4, 5), recovered.get(2).getCreateTime());
+
+        reopened.discardRecovered();
+        assertFalse(Files.exists(dir.resolve("chat-0.wal")));
+        assertTrue(Files.exists(dir.resolve("chat-1.wal")));
+    }
+
+    @Test
+    void stopsAtRecordWithBadChecksum() throws IOException {
+        ChatMessageWal wal = new ChatMessageWal(dir, 1 << 20, false);
+        wal.append(message(1, "a"));
+        wal.append(message(2, "b"));
+        Path segment = dir.resolve("chat-0.wal");
+        // 改掉第二条记录负载的最后一个字节
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[bytes.length - 1] ^= 0x7f;
+        Files.write(segment, bytes);
+
+        List<SysChatMsg> recovered = new ChatMessageWal(dir, 1 << 20, false).recover();
+        assertEquals(List.of(1L), recovered.stream().map(SysChatMsg::getId).toList());
+    }
+
+    @Test
+    void deletesSealedSegmentsOncePersisted() throws IOException {
+        ChatMessageWal wal = new ChatMessageWal(dir, 64, false);
+        ChatMessageWal.Segment first = wal.append(message(1, "x".repeat(80)));
+        ChatMessageWal.Segment second = wal.append(message(2, "y"));
+        assertNotSame(first, second);
+        assertEquals(2, fileCount(dir));
+
+        wal.persisted(first);
+        assertEquals(1, fileCount(dir));
+        wal.persisted(second);
+        wal.close();
+        assertEquals(0, fileCount(dir));
+    }
+}
@@ -0,0 +1,143 @@
+package com.moonpointer.xs.component;
+
+import com.moonpointer.xs.entity.SysChatMsg;
+import com.moonpointer.xs.mapper.ChatMsgMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class ChatMessageWriterTest {
+
+    @TempDir
+    Path dir;
+
+    private final ChatMsgMapper mapper = mock(ChatMsgMapper.class);
+    // 写入时每条消息的 is_read，以及事后按 ID 补标已读的消息
+    private final Map<Long, Integer> insertedIsRead = new ConcurrentHashMap<>();
+    private final Set<Long> markedReadLater = ConcurrentHashMap.newKeySet();
+    private ChatMessageWriter writer;
+
+    private ChatMessageWriter newWriter() throws Exception {
+        writer = new ChatMessageWriter(mapper, new ChatMsgIdGenerator(0));
+        ReflectionTestUtils.setField(writer, "queueCapacity", 100);
+        ReflectionTestUtils.setField(writer, "batchSize", 10);
+        ReflectionTestUtils.setField(writer, "flushMillis", 20L);
+        ReflectionTestUtils.setField(writer, "offerTimeoutMillis", 100L);
+        ReflectionTestUtils.setField(writer, "walDir", dir.toString());
+        ReflectionTestUtils.setField(writer, "walFsync", false);
+        ReflectionTestUtils.setField(writer, "walSegmentBytes", 1L << 20);
+        writer.init();
+        return writer;
+    }
+
+    private void recordInserts(CountDownLatch entered, CountDownLatch release) {
+        doAnswer(inv -> {
+            Collection<SysChatMsg> msgs = inv.getArgument(0);
+            for (SysChatMsg m : msgs) insertedIsRead.put(m.getId(), m.getIsRead());
+            entered.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return msgs.size();
+        }).when(mapper).insertBatch(anyCollection());
+        doAnswer(inv -> {
+            Collection<Long> ids = inv.getArgument(0);
+            markedReadLater.addAll(ids);
+            return null;
+        }).when(mapper).markReadByIds(anyCollection());
+    }
+
+    private void awaitPersisted(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((long) writer.stats().get("persisted") < count) {
+            assertTrue(System.currentTimeMillis() < deadline, "消息未入库");
+            Thread.sleep(5);
+        }
+    }
+
+    private static SysChatMsg message(long sender, long receiver) {
+        SysChatMsg msg = new SysChatMsg();
+        msg.setSenderId(sender);
+        msg.setReceiverId(receiver);
+        msg.setContent("hi");
+        msg.setMsgType(0);
+        return msg;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (writer != null) writer.shutdown();
+    }
+
+    @Test
+    void receiptDuringInsertIsAppliedById() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        recordInserts(entered, release);
+        newWriter();
+
+        SysChatMsg msg = message(1, 2);
+        writer.submit(msg);
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        // 这一批已经以未读状态写入，回执到达后要按 ID 补标
+        writer.markRead(1L, 2L);
+        release.countDown();
+        awaitPersisted(1);
+
+        assertEquals(0, insertedIsRead.get(msg.getId()));
+        assertTrue(markedReadLater.contains(msg.getId()));
+    }
+
+    @Test
+    void receiptForQueuedMessageIsWrittenAsRead() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        recordInserts(entered, release);
+        newWriter();
+
+        // 第一条卡在写库中，第二条还在队列里
+        writer.submit(message(3, 4));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        SysChatMsg queued = message(1, 2);
+        writer.submit(queued);
+        SysChatMsg other = message(2, 1);
+        writer.submit(other);
+
+        writer.markRead(1L, 2L);
+        release.countDown();
+        awaitPersisted(3);
+
+        assertEquals(1, insertedIsRead.get(queued.getId()));
+        // 方向相反的消息不受影响
+        assertEquals(0, insertedIsRead.get(other.getId()));
+    }
+
+    @Test
+    void replaysWalLeftByCrashOnStartup() throws Exception {
+        ChatMessageWal crashed = new ChatMessageWal(dir, 1 << 20, false);
+        crashed.append(ChatMessageWalTest.message(1, "a"));
+        crashed.append(ChatMessageWalTest.message(2, "b"));
+        ChatMessageWalTest.appendTornRecord(dir.resolve("chat-0.wal"));
+
+        List<Long> replayed = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(inv -> {
+            Collection<SysChatMsg> msgs = inv.getArgument(0);
+            for (SysChatMsg m : msgs) replayed.add(m.getId());
+            return msgs.size();
+        }).when(mapper).insertBatch(anyCollection());
+        newWriter();
+
+        assertEquals(List.of(1L, 2L), replayed);
+        assertFalse(Files.exists(dir.resolve("chat-0.wal")));
+    }
+}
@@ -0,0 +1,294 @@
+package com.moonpointer.xs.component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 内存中的小说存储，供测试使用：不落盘，localPath 始终为 null (走 openRead 路径)
+ * 已提交的文件内容不可变，替换时换成新的字节数组，已打开的通道仍读到旧内容
+ */
+public class InMemoryNovelStorage implements NovelStorage {
+
+    private record Entry(byte[] data, long lastModified) {
+    }
+
+    private final ConcurrentHashMap<String, Entry> files = new ConcurrentHashMap<>();
+    private final long capacity;
+
+    public InMemoryNovelStorage() {
+        this(Long.MAX_VALUE);
+    }
+
+    // capacity 仅用于 volumes() 报告
+    public InMemoryNovelStorage(long capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public FileChannel openRead(String name) throws IOException {
+        Entry entry = files.get(name);
+        if (entry == null) throw new NoSuchFileException(name);
+        return new MemoryChannel(entry.data(), entry.data().length, false);
+    }
+
+    @Override
+    public Draft create() {
+        return new MemoryDraft();
+    }
+
+    @Override
+    public boolean exists(String name) {
+        return files.containsKey(name);
+    }
+
+    @Override
+    public long size(String name) throws IOException {
+        return require(name).data().length;
+    }
+
+    @Override
+    public long lastModified(String name) throws IOException {
+        return require(name).lastModified();
+    }
+
+    @Override
+    public boolean delete(String name) {
+        return files.remove(name) != null;
+    }
+
+    @Override
+    public List<String> list(String suffix) {
+        List<String> names = new ArrayList<>();
+        for (String name : files.keySet()) {
+            if (name.endsWith(suffix) && !name.startsWith(".")) names.add(name);
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    @Override
+    public Path localPath(String name) {
+        return null;
+    }
+
+    @Override
+    public List<Volume> volumes() {
+        long used = 0;
+        for (Entry entry : files.values()) used += entry.data().length;
+        return List.of(new Volume("memory", capacity, Math.max(0, capacity - used)));
+    }
+
+    // 直接写入一个文件，便于准备测试数据
+    public void put(String name, byte[] data) {
+        files.put(name, new Entry(data.clone(), System.currentTimeMillis()));
+    }
+
+    // 读取整个文件的内容
+    public byte[] content(String name) throws IOException {
+        return require(name).data().clone();
+    }
+
+    private Entry require(String name) throws NoSuchFileException {
+        Entry entry = files.get(name);
+        if (entry == null) throw new NoSuchFileException(name);
+        return entry;
+    }
+
+    private final class MemoryDraft implements Draft {
+        private final MemoryChannel channel = new MemoryChannel(new byte[4096], 0, true);
+        private boolean finished;
+
+        @Override
+        public FileChannel channel() {
+            return channel;
+        }
+
+        @Override
+        public long size() {
+            return channel.length();
+        }
+
+        @Override
+        public boolean commit(String name, boolean replace) throws IOException {
+            if (finished) throw new IllegalStateException("草稿已提交或已丢弃");
+            finished = true;
+            Entry entry = new Entry(channel.snapshot(), System.currentTimeMillis());
+            if (replace) {
+                files.put(name, entry);
+                return true;
+            }
+            return files.putIfAbsent(name, entry) == null;
+        }
+
+        @Override
+        public void close() {
+            finished = true;
+        }
+    }
+
+    /**
+     * 基于字节数组的 FileChannel，支持位置读写；不支持 map 和文件锁
+     */
+    private static final class MemoryChannel extends FileChannel {
+        private byte[] data;
+        private int length;
+        private long position;
+        private final boolean writable;
+
+        MemoryChannel(byte[] data, int length, boolean writable) {
+            this.data = data;
+            this.length = length;
+            this.writable = writable;
+        }
+
+        synchronized int length() {
+            return length;
+        }
+
+        synchronized byte[] snapshot() {
+            return Arrays.copyOf(data, length);
+        }
+
+        @Override
+        public synchronized int read(ByteBuffer dst) throws IOException {
+            int n = read(dst, position);
+            if (n > 0) position += n;
+            return n;
+        }
+
+        @Override
+        public synchronized long read(ByteBuffer[] dsts, int offset, int count) throws IOException {
+            long total = 0;
+            for (int i = offset; i < offset + count; i++) {
+                int n = read(dsts[i]);
+                if (n < 0) return total == 0 ? -1 : total;
+                total += n;
+                if (dsts[i].hasRemaining()) break;
+            }
+            return total;
+        }
+
+        @Override
+        public synchronized int read(ByteBuffer dst, long position) throws IOException {
+            ensureOpen();
+            if (position >= length) return -1;
+            int n = (int) Math.min(dst.remaining(), length - position);
+            dst.put(data, (int) position, n);
+            return n;
+        }
+
+        @Override
+        public synchronized int write(ByteBuffer src) throws IOException {
+            int n = write(src, position);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public synchronized long write(ByteBuffer[] srcs, int offset, int count) throws IOException {
+            long total = 0;
+            for (int i = offset; i < offset + count; i++) total += write(srcs[i]);
+            return total;
+        }
+
+        @Override
+        public synchronized int write(ByteBuffer src, long position) throws IOException {
+            ensureOpen();
+            if (!writable) throw new NonWritableChannelException();
+            int n = src.remaining();
+            long end = position + n;
+            if (end > Integer.MAX_VALUE) throw new IOException("内存文件过大");
+            if (end > data.length) data = Arrays.copyOf(data, (int) Math.max(end, Math.min(Integer.MAX_VALUE, data.length * 2L)));
+            src.get(data, (int) position, n);
+            length = (int) Math.max(length, end);
+            return n;
+        }
+
+        @Override
+        public synchronized long position() throws IOException {
+            ensureOpen();
+            return position;
+        }
+
+        @Override
+        public synchronized FileChannel position(long newPosition) throws IOException {
+            ensureOpen();
+            position = newPosition;
+            return this;
+        }
+
+        @Override
+        public synchronized long size() throws IOException {
+            ensureOpen();
+            return length;
+        }
+
+        @Override
+        public synchronized FileChannel truncate(long size) throws IOException {
+            ensureOpen();
+            if (!writable) throw new NonWritableChannelException();
+            if (size < length) length = (int) size;
+            if (position > size) position = size;
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) {
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            ByteBuffer buffer;
+            synchronized (this) {
+                ensureOpen();
+                if (position >= length) return 0;
+                int n = (int) Math.min(count, length - position);
+                buffer = ByteBuffer.wrap(Arrays.copyOfRange(data, (int) position, (int) position + n));
+            }
+            return target.write(buffer);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(count, 64 * 1024));
+            long total = 0;
+            while (total < count) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), count - total));
+                int n = src.read(buffer);
+                if (n <= 0) break;
+                buffer.flip();
+                total += write(buffer, position + total);
+            }
+            return total;
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) {
+            throw new UnsupportedOperationException("内存存储不支持 mmap");
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) {
+            throw new UnsupportedOperationException("内存存储不支持文件锁");
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) {
+            throw new UnsupportedOperationException("内存存储不支持文件锁");
+        }
+
+        @Override
+        protected void implCloseChannel() {
+        }
+
+        private void ensureOpen() throws ClosedChannelException {
+            if (!isOpen()) throw new ClosedChannelException();
+        }
+    }
+}
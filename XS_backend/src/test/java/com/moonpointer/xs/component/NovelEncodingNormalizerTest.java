@@ -0,0 +1,51 @@
+package com.moonpointer.xs.component;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NovelEncodingNormalizerTest {
+
+    private final NovelEncodingNormalizer normalizer = new NovelEncodingNormalizer();
+
+    private String normalize(byte[] input, ByteArrayOutputStream out) throws Exception {
+        return normalizer.normalize(new ByteArrayInputStream(input), out, null);
+    }
+
+    @Test
+    void utf8IsCopiedWithoutBom() throws Exception {
+        String text = "第一章 月光照在书页上\nMoonlight\n".repeat(5000);
+        byte[] bom = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        byte[] input = new byte[bom.length + body.length];
+        System.arraycopy(bom, 0, input, 0, bom.length);
+        System.arraycopy(body, 0, input, bom.length, body.length);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals("UTF-8", normalize(input, out));
+        assertArrayEquals(body, out.toByteArray());
+    }
+
+    // 开头的样本全是 ASCII (按 UTF-8 合法)，正文是 GBK
+    @Test
+    void gbkBodyAfterAsciiPrefaceIsTranscoded() throws Exception {
+        String preface = "Preface line in plain ASCII.\n".repeat(4000);
+        String body = "第一章 月光照在书页上，她说：“我们走吧。”\n".repeat(2000);
+        Charset gb = Charset.forName("GB18030");
+        byte[] head = preface.getBytes(StandardCharsets.US_ASCII);
+        byte[] tail = body.getBytes(gb);
+        assertTrue(head.length > 64 * 1024);
+        byte[] input = new byte[head.length + tail.length];
+        System.arraycopy(head, 0, input, 0, head.length);
+        System.arraycopy(tail, 0, input, head.length, tail.length);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals("GB18030", normalize(input, out));
+        assertEquals(preface + body, out.toString(StandardCharsets.UTF_8));
+    }
+}
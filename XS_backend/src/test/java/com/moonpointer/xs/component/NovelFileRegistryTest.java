@@ -0,0 +1,80 @@
+package com.moonpointer.xs.component;
+
+import com.moonpointer.xs.utils.NovelBlockFormat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NovelFileRegistryTest {
+
+    private final InMemoryNovelStorage storage = new InMemoryNovelStorage();
+    private NovelFileRegistry registry;
+    private byte[] text;
+
+    @BeforeEach
+    void setUp() {
+        registry = new NovelFileRegistry(storage);
+        ReflectionTestUtils.setField(registry, "idleSeconds", 300L);
+        ReflectionTestUtils.setField(registry, "bufferSize", 4096);
+        ReflectionTestUtils.setField(registry, "bufferPoolSize", 4);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) sb.append("第").append(i).append("行 月光照在书页上 moonlight\n");
+        text = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.closeAll();
+    }
+
+    // 原样存放与分块压缩后的文件，按原文偏移读出的内容应完全一致
+    @Test
+    void compressedFileReadsLikeOriginal() throws Exception {
+        storage.put("plain.txt", text);
+        storage.put("packed.txt", text);
+        try (NovelStorage.Draft draft = storage.create("packed.txt");
+             FileChannel in = storage.openRead("packed.txt")) {
+            NovelBlockFormat.compress(in, draft.channel(), 1000);
+            assertTrue(draft.commit("packed.txt", true));
+        }
+        registry.invalidate("packed.txt");
+
+        assertFalse(registry.isCompressed("plain.txt"));
+        assertTrue(registry.isCompressed("packed.txt"));
+        assertTrue(storage.size("packed.txt") < text.length);
+        assertEquals(text.length, registry.size("packed.txt"));
+
+        // 跨块边界、从块中间开始、读到文件末尾
+        long[][] ranges = {{0, 100}, {990, 30}, {1500, 3000}, {text.length - 10, 100}};
+        for (long[] range : ranges) {
+            for (String name : new String[]{"plain.txt", "packed.txt"}) {
+                ByteBuffer dst = ByteBuffer.allocate((int) range[1]);
+                int n = registry.read(name, range[0], dst);
+                int expected = (int) Math.min(range[1], text.length - range[0]);
+                assertEquals(expected, n, name + " @" + range[0]);
+                assertArrayEquals(Arrays.copyOfRange(text, (int) range[0], (int) range[0] + expected),
+                        Arrays.copyOf(dst.array(), n), name + " @" + range[0]);
+            }
+        }
+        assertEquals(-1, registry.read("packed.txt", text.length, ByteBuffer.allocate(10)));
+
+        try (InputStream in = registry.openStream("packed.txt")) {
+            assertArrayEquals(text, in.readAllBytes());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(5000, registry.transferTo("packed.txt", 123, 5000, Channels.newChannel(out)));
+        assertArrayEquals(Arrays.copyOfRange(text, 123, 5123), out.toByteArray());
+    }
+}
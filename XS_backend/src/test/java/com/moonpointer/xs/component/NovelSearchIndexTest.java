@@ -0,0 +1,91 @@
+package com.moonpointer.xs.component;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NovelSearchIndexTest {
+
+    private final InMemoryNovelStorage storage = new InMemoryNovelStorage();
+    private final NovelFileRegistry registry = newRegistry(storage);
+
+    private static NovelFileRegistry newRegistry(NovelStorage storage) {
+        NovelFileRegistry registry = new NovelFileRegistry(storage);
+        ReflectionTestUtils.setField(registry, "idleSeconds", 300L);
+        ReflectionTestUtils.setField(registry, "bufferSize", 4096);
+        ReflectionTestUtils.setField(registry, "bufferPoolSize", 4);
+        return registry;
+    }
+
+    private NovelSearchIndex newIndex() {
+        NovelSearchIndex index = new NovelSearchIndex(registry, storage);
+        ReflectionTestUtils.setField(index, "segmentSize", 64);
+        return index;
+    }
+
+    private void book(String name, String... lines) {
+        storage.put(name, String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.closeAll();
+    }
+
+    @Test
+    void postingsPointAtSegmentsContainingTheTerm() throws Exception {
+        StringBuilder filler = new StringBuilder();
+        for (int i = 0; i < 20; i++) filler.append("无关的内容");
+        book("a.txt", "开头一行", filler.toString(), "月光照在书页上", filler.toString(), "Moonlight again");
+        NovelSearchIndex index = newIndex();
+
+        NovelSearchIndex.Segment segment = index.build("a.txt");
+        assertEquals(List.of("月光", "光照"), NovelSearchIndex.tokenize("月光照").subList(0, 2));
+
+        long[] moon = segment.lookup("月光");
+        assertEquals(1, moon.length);
+        String text = new String(storage.content("a.txt"), StandardCharsets.UTF_8);
+        long lineStart = text.substring(0, text.indexOf("月光照")).getBytes(StandardCharsets.UTF_8).length;
+        // 段从行首开始，关键词所在行不早于段起点
+        assertTrue(moon[0] <= lineStart);
+        assertArrayEquals(new long[0], segment.lookup("不存在"));
+        assertEquals(1, segment.lookup("moonlight").length);
+        assertTrue(storage.exists(index.sidecarName("a.txt")));
+    }
+
+    @Test
+    void dictionaryNarrowsQueriesToBooksWithEveryTerm() throws Exception {
+        book("a.txt", "月光照在书页上");
+        book("b.txt", "月色与灯光");
+        book("c.txt", "月光下的书页");
+        NovelSearchIndex index = newIndex();
+        index.build("a.txt");
+        index.build("b.txt");
+        index.build("c.txt");
+
+        assertEquals(Set.of("a.txt", "c.txt"), index.filesContaining(NovelSearchIndex.tokenize("月光")));
+        assertEquals(Set.of("a.txt", "c.txt"), index.filesContaining(NovelSearchIndex.tokenize("书页")));
+        assertEquals(Set.of("a.txt"), index.filesContaining(NovelSearchIndex.tokenize("月光照")));
+        assertEquals(Set.of(), index.filesContaining(NovelSearchIndex.tokenize("太阳")));
+
+        // 删除的文件不再出现
+        index.invalidate("c.txt");
+        assertFalse(index.inDictionary("c.txt"));
+        assertEquals(Set.of("a.txt"), index.filesContaining(NovelSearchIndex.tokenize("书页")));
+
+        // 重启后从已有的索引文件加载词典，没有索引文件的书返回 false
+        NovelSearchIndex restarted = newIndex();
+        assertTrue(restarted.loadDictionary("a.txt"));
+        assertTrue(restarted.loadDictionary("b.txt"));
+        book("d.txt", "没有索引");
+        assertFalse(restarted.loadDictionary("d.txt"));
+        assertEquals(Set.of("b.txt"), restarted.filesContaining(NovelSearchIndex.tokenize("灯光")));
+        assertEquals(Set.of("a.txt"), restarted.filesContaining(NovelSearchIndex.tokenize("书页")));
+    }
+}
@@ -0,0 +1,110 @@
+package com.moonpointer.xs.service;
+
+import com.moonpointer.xs.common.Result;
+import com.moonpointer.xs.component.*;
+import com.moonpointer.xs.dto.NovelDTO;
+import com.moonpointer.xs.mapper.NovelMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class NovelIngestServiceTest {
+
+    private final InMemoryNovelStorage storage = new InMemoryNovelStorage();
+    private final NovelFileRegistry registry = new NovelFileRegistry(storage);
+    private final NovelMapper novelMapper = mock(NovelMapper.class);
+    private NovelIngestService ingest;
+    private byte[] text;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(registry, "idleSeconds", 300L);
+        ReflectionTestUtils.setField(registry, "bufferSize", 4096);
+        ReflectionTestUtils.setField(registry, "bufferPoolSize", 4);
+
+        NovelChapterIndex chapterIndex = new NovelChapterIndex(registry, storage);
+        NovelCheckpointIndex checkpointIndex = new NovelCheckpointIndex(registry, storage, mock(NovelPinnedCache.class));
+        ReflectionTestUtils.setField(checkpointIndex, "interval", 1024);
+        NovelSearchIndex searchIndex = new NovelSearchIndex(registry, storage);
+        ReflectionTestUtils.setField(searchIndex, "segmentSize", 256);
+
+        // 不接数据库，事务回调直接执行
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(inv ->
+                inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+
+        ingest = new NovelIngestService(novelMapper, storage, registry, mock(NovelService.class),
+                new NovelEncodingNormalizer(), chapterIndex, checkpointIndex, searchIndex,
+                mock(NovelCatalog.class), transactionTemplate);
+        ReflectionTestUtils.setField(ingest, "compressBlockSize", 1000);
+        ReflectionTestUtils.setField(ingest, "workers", 1);
+        ReflectionTestUtils.setField(ingest, "queueCapacity", 2);
+        ingest.init();
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; i++) sb.append("第").append(i).append("章 月光照在书页上\n");
+        text = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ingest.shutdown();
+        registry.closeAll();
+    }
+
+    private NovelDTO.IngestJob runJob() throws Exception {
+        Result<String> submitted = ingest.submit("a.txt", null, null, () -> {
+            NovelStorage.Draft draft = storage.create();
+            try (OutputStream out = draft.out()) {
+                out.write(text);
+            }
+            return draft;
+        });
+        assertEquals(200, submitted.getCode());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            NovelDTO.IngestJob job = ingest.getJob(submitted.getData()).getData();
+            if ("SUCCEEDED".equals(job.getStatus()) || "FAILED".equals(job.getStatus())) return job;
+            assertTrue(System.currentTimeMillis() < deadline, "导入任务未结束");
+            Thread.sleep(5);
+        }
+    }
+
+    private String storedName() {
+        return storage.list(".txt").get(0);
+    }
+
+    // 建索引时已按原文打开过句柄，压缩替换后应按压缩格式读取，长度仍是原文长度
+    @Test
+    void compressedUploadIsReadAsCompressed() throws Exception {
+        ReflectionTestUtils.setField(ingest, "compressOnUpload", true);
+
+        assertEquals("SUCCEEDED", runJob().getStatus());
+        String name = storedName();
+        assertTrue(registry.isCompressed(name));
+        assertEquals(text.length, registry.size(name));
+        assertTrue(storage.size(name) < text.length);
+    }
+
+    // 发布失败时，本任务新建的文件和已生成的索引文件都要删掉
+    @Test
+    void failedPublishRemovesCreatedFiles() throws Exception {
+        doThrow(new IllegalStateException("写库失败")).when(novelMapper).insert(any());
+
+        NovelDTO.IngestJob job = runJob();
+        assertEquals("FAILED", job.getStatus());
+        assertEquals("PUBLISH", job.getStage());
+        assertEquals(List.of(), storage.list(""));
+    }
+}